@@ -1,19 +1,12 @@
 package it.sephiroth.android.library.mymodule.app;
 
-import android.annotation.TargetApi;
-import android.content.Context;
 import android.content.Intent;
-import android.graphics.Point;
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.v7.app.ActionBarActivity;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.view.ViewGroup;
-import android.view.ViewTreeObserver;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.ListView;
@@ -21,13 +14,11 @@ import android.widget.ListView;
 import java.util.ArrayList;
 import java.util.List;
 
-import it.sephiroth.android.library.tooltip.Tooltip;
 import it.sephiroth.android.library.tooltip.TooltipManager;
 
 
 public class MainActivity3 extends ActionBarActivity
-	implements AdapterView.OnItemClickListener, MyTextView.OnAttachStatusListener, TooltipManager.OnTooltipAttachedStateChange,
-	           ViewTreeObserver.OnPreDrawListener, TooltipManager.onTooltipClosingCallback {
+	implements AdapterView.OnItemClickListener, TooltipManager.OnTooltipAttachedStateChange, TooltipManager.onTooltipClosingCallback {
 
 	private static final String TAG = "MainActivity3";
 	ListView listView;
@@ -38,12 +29,6 @@ public class MainActivity3 extends ActionBarActivity
 
 	static final int LIST_POSITION = 15;
 
-	private Tooltip tooltipView;
-
-	private View mView;
-
-	private int[] mTempLocation = {0, 0};
-
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -55,22 +40,24 @@ public class MainActivity3 extends ActionBarActivity
 		}
 
 		listView = (ListView) findViewById(android.R.id.list);
-		listView.setAdapter(new MyAdapter(this, R.layout.custom_list_textview, android.R.id.text1, array));
+		listView.setAdapter(new ArrayAdapter<String>(this, R.layout.custom_list_textview, android.R.id.text1, array));
 		listView.setOnItemClickListener(this);
 
 		tooltipManager = TooltipManager.getInstance(this);
 		tooltipManager.addOnTooltipAttachedStateChange(this);
 
+		// the tooltip follows the row at LIST_POSITION while the list scrolls
+		// and recycles its views, and hides while the row is off screen
 		tooltipManager.create(TOOLTIP_ID)
 		              .maxWidth(450)
-		              .anchor(new Point(80, 0), TooltipManager.Gravity.RIGHT)
+		              .anchor(listView, LIST_POSITION, TooltipManager.Gravity.BOTTOM)
 		              .closePolicy(TooltipManager.ClosePolicy.TouchInside, 0)
 		              .text("Brigthness, Saturation, Contrast and Warmth are now here!")
 		              .actionBarSize(Utils.getActionBarSize(this))
 		              .fitToScreen(false)
 		              .animationDuration(100)
 		              .withCallback(this)
-		              .build();
+		              .show();
 	}
 
 	@Override
@@ -112,114 +99,18 @@ public class MainActivity3 extends ActionBarActivity
 		}
 	}
 
-	@Override
-	public void onAttachedtoWindow(final View view) {
-		Log.i(TAG, "onAttachedtoWindow: " + view);
-
-		if (null != tooltipView) {
-			tooltipView.show();
-			view.getViewTreeObserver().addOnPreDrawListener(this);
-		}
-	}
-
-	@Override
-	public void onDetachedFromWindow(final View view) {
-		onFinishTemporaryDetach(view);
-	}
-
-	@Override
-	public void onFinishTemporaryDetach(final View view) {
-		Log.i(TAG, "onFinishTemporaryDetach: " + view);
-
-		if (null != tooltipView && tooltipView.isShown()) {
-			tooltipView.hide(false);
-		}
-		removeListeners();
-	}
-
 	@Override
 	public void onTooltipAttached(final int id) {
 		Log.i(TAG, "onTooltipAttached: " + id);
-
-		if (id == TOOLTIP_ID) {
-			tooltipView = tooltipManager.get(id);
-		}
 	}
 
 	@Override
 	public void onTooltipDetached(final int id) {
 		Log.i(TAG, "onTooltipDetached: " + id);
-		removeListeners();
-
-		if (id == TOOLTIP_ID) {
-			tooltipView = null;
-		}
-	}
-
-	private void removeListeners() {
-		Log.i(TAG, "removeListeners");
-
-		if (null != mView) {
-			mView.getViewTreeObserver().removeOnPreDrawListener(this);
-			((MyTextView) mView).setOnAttachStatusListener(null);
-			mView = null;
-		}
-	}
-
-	@Override
-	public boolean onPreDraw() {
-		if (null == mView || ! mView.isShown() || null == tooltipView) {
-			Log.e(TAG, "!isShown");
-			return true;
-		}
-
-		mView.getLocationOnScreen(mTempLocation);
-		tooltipView.setOffsetY(mTempLocation[1]);
-
-//		Log.v(TAG, "onPreDraw::location: " + mTempLocation[0] + "x" + mTempLocation[1]);
-
-		return true;
 	}
 
 	@Override
 	public void onClosing(final int id, final boolean fromUser, final boolean containsTouch) {
 		// tooltip is being closed...
 	}
-
-
-	class MyAdapter extends ArrayAdapter<String> {
-
-		public MyAdapter(final Context context, final int resource, final int textViewResourceId, final List<String> objects) {
-			super(context, resource, textViewResourceId, objects);
-		}
-
-		@TargetApi (Build.VERSION_CODES.HONEYCOMB_MR1)
-		@Override
-		public View getView(final int position, View convertView, final ViewGroup parent) {
-
-			final View result = super.getView(position, convertView, parent);
-
-			if (position == LIST_POSITION && null != tooltipView) {
-
-				final Handler handler = listView.getHandler();
-				if (null != handler) {
-					handler.post(
-						new Runnable() {
-							@Override
-							public void run() {
-								((MyTextView) result).setOnAttachStatusListener((MainActivity3) getContext());
-								MainActivity3.this.onAttachedtoWindow(result);
-								mView = result;
-							}
-						}
-					);
-				}
-				else {
-					Log.e(TAG, "handler is null!");
-				}
-			}
-
-			return result;
-		}
-	}
 }
@@ -0,0 +1,58 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.view.View;
+import android.widget.Adapter;
+import android.widget.AdapterView;
+
+/**
+ * Anchors a tooltip to an adapter position or item id instead of a view, so that the
+ * tooltip keeps following the right row while the {@link AdapterView} recycles its views.
+ * The row view is looked up among the visible children of the adapter view only when needed.
+ */
+final class AdapterAnchor {
+    private final AdapterView<?> adapterView;
+    private final int position;
+    private final long itemId;
+    private final boolean byItemId;
+
+    private AdapterAnchor(final AdapterView<?> adapterView, final int position, final long itemId, final boolean byItemId) {
+        this.adapterView = adapterView;
+        this.position = position;
+        this.itemId = itemId;
+        this.byItemId = byItemId;
+    }
+
+    static AdapterAnchor forPosition(AdapterView<?> adapterView, int position) {
+        return new AdapterAnchor(adapterView, position, AdapterView.INVALID_ROW_ID, false);
+    }
+
+    static AdapterAnchor forItemId(AdapterView<?> adapterView, long itemId) {
+        return new AdapterAnchor(adapterView, AdapterView.INVALID_POSITION, itemId, true);
+    }
+
+    /**
+     * @return the view currently bound to the anchored row, or null if the row is not visible
+     */
+    View resolve() {
+        if (!adapterView.isShown()) return null;
+
+        final int first = adapterView.getFirstVisiblePosition();
+        final int count = adapterView.getChildCount();
+
+        if (!byItemId) {
+            final int index = position - first;
+            return index >= 0 && index < count ? adapterView.getChildAt(index) : null;
+        }
+
+        final Adapter adapter = adapterView.getAdapter();
+        if (null == adapter) return null;
+
+        final int adapterCount = adapter.getCount();
+        for (int i = 0; i < count && first + i < adapterCount; i++) {
+            if (adapter.getItemId(first + i) == itemId) {
+                return adapterView.getChildAt(i);
+            }
+        }
+        return null;
+    }
+}
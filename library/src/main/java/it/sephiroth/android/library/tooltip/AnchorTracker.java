@@ -0,0 +1,53 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+
+/**
+ * Single pre-draw hook shared by all the tooltips of a manager which follow
+ * their anchor view, see {@link TooltipManager.Builder#trackAnchor(boolean)}.
+ * The listener is installed only while at least one tooltip is tracked.
+ */
+final class AnchorTracker implements ViewTreeObserver.OnPreDrawListener {
+    private final ArrayList<TooltipView> mTooltips = new ArrayList<TooltipView>();
+    private ViewTreeObserver mObserver;
+
+    void add(TooltipView tooltip, View root) {
+        if (mTooltips.contains(tooltip)) return;
+        mTooltips.add(tooltip);
+
+        if (null == mObserver || !mObserver.isAlive()) {
+            mObserver = root.getViewTreeObserver();
+            mObserver.addOnPreDrawListener(this);
+        }
+    }
+
+    void remove(TooltipView tooltip) {
+        if (mTooltips.remove(tooltip) && mTooltips.isEmpty()) {
+            stop();
+        }
+    }
+
+    void clear() {
+        mTooltips.clear();
+        stop();
+    }
+
+    private void stop() {
+        if (null != mObserver && mObserver.isAlive()) {
+            mObserver.removeOnPreDrawListener(this);
+        }
+        mObserver = null;
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        final int size = mTooltips.size();
+        for (int i = 0; i < size; i++) {
+            mTooltips.get(i).trackAnchor();
+        }
+        return true;
+    }
+}
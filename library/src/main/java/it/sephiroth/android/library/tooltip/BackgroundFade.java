@@ -0,0 +1,61 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.animation.ValueAnimator;
+
+/**
+ * Fades a {@link TooltipBackgroundDrawable} in and out by modulating its alpha, so the
+ * dimming layer is a single fill per frame. A fade interrupted by the opposite one is
+ * reversed from its current value.
+ */
+final class BackgroundFade implements ValueAnimator.AnimatorUpdateListener {
+    private final TooltipBackgroundDrawable mDrawable;
+    private final ValueAnimator mAnimator;
+    private boolean mFadingIn;
+
+    BackgroundFade(TooltipBackgroundDrawable drawable) {
+        mDrawable = drawable;
+        mAnimator = ValueAnimator.ofInt(0, 255);
+        mAnimator.addUpdateListener(this);
+    }
+
+    void fadeIn(long duration) {
+        fade(true, duration);
+    }
+
+    void fadeOut(long duration) {
+        fade(false, duration);
+    }
+
+    private void fade(boolean in, long duration) {
+        if (mAnimator.isStarted()) {
+            if (mFadingIn != in) {
+                mAnimator.reverse();
+            }
+        } else if (duration <= 0) {
+            mDrawable.setAlpha(in ? 255 : 0);
+        } else {
+            mAnimator.setDuration(duration);
+            if (in) {
+                mAnimator.start();
+            } else {
+                // plays from 255 down to 0
+                mAnimator.reverse();
+            }
+        }
+        mFadingIn = in;
+    }
+
+    /**
+     * Cancels the running fade and sets the final alpha
+     */
+    void jumpTo(boolean in) {
+        mAnimator.cancel();
+        mFadingIn = in;
+        mDrawable.setAlpha(in ? 255 : 0);
+    }
+
+    @Override
+    public void onAnimationUpdate(final ValueAnimator animation) {
+        mDrawable.setAlpha((Integer) animation.getAnimatedValue());
+    }
+}
@@ -0,0 +1,101 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.graphics.Path;
+import android.util.LruCache;
+
+/**
+ * Process wide cache of the bubble outlines drawn by {@link TooltipTextDrawable}.<br />
+ * The paths are built at the origin, so tooltips sharing the same corner radius,
+ * arrow size, bubble size and arrow position share the same path regardless of where
+ * they are on the screen. Cached paths are never modified. Main thread only.
+ */
+final class BubblePathCache {
+    private static final int MAX_SIZE = 32;
+
+    /**
+     * Everything the bubble path depends on
+     */
+    static final class Key {
+        int width;
+        int height;
+        int padding;
+        int arrowWeight;
+        float cornerRadius;
+        // -1 without arrow
+        int gravity;
+        int pointX;
+        int pointY;
+
+        void set(
+                int width, int height, int padding, int arrowWeight, float cornerRadius, TooltipManager.Gravity gravity,
+                int pointX, int pointY) {
+            this.width = width;
+            this.height = height;
+            this.padding = padding;
+            this.arrowWeight = arrowWeight;
+            this.cornerRadius = cornerRadius;
+            this.gravity = null != gravity ? gravity.ordinal() : -1;
+            this.pointX = null != gravity ? pointX : 0;
+            this.pointY = null != gravity ? pointY : 0;
+        }
+
+        Key copy() {
+            Key key = new Key();
+            key.width = width;
+            key.height = height;
+            key.padding = padding;
+            key.arrowWeight = arrowWeight;
+            key.cornerRadius = cornerRadius;
+            key.gravity = gravity;
+            key.pointX = pointX;
+            key.pointY = pointY;
+            return key;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return width == key.width
+                    && height == key.height
+                    && padding == key.padding
+                    && arrowWeight == key.arrowWeight
+                    && Float.compare(cornerRadius, key.cornerRadius) == 0
+                    && gravity == key.gravity
+                    && pointX == key.pointX
+                    && pointY == key.pointY;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = width;
+            result = 31 * result + height;
+            result = 31 * result + padding;
+            result = 31 * result + arrowWeight;
+            result = 31 * result + Float.floatToIntBits(cornerRadius);
+            result = 31 * result + gravity;
+            result = 31 * result + pointX;
+            result = 31 * result + pointY;
+            return result;
+        }
+    }
+
+    private static final LruCache<Key, Path> sCache = new LruCache<Key, Path>(MAX_SIZE);
+
+    private BubblePathCache() {
+    }
+
+    static Path get(Key key) {
+        return sCache.get(key);
+    }
+
+    /**
+     * @param key  copied, it can be reused by the caller
+     * @param path must not be modified once cached
+     */
+    static void put(Key key, Path path) {
+        sCache.put(key.copy(), path);
+    }
+}
@@ -0,0 +1,175 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * Inflates the tooltip content views on a background thread.<br />
+ * While the show delay of a tooltip runs, its content view is inflated, styled and
+ * measured on a worker thread. When the tooltip is about to be shown the prepared view
+ * is taken if ready, otherwise the request is dropped and the view is inflated on the
+ * main thread as usual.
+ */
+final class ContentPreparer {
+    private static final String TAG = "ContentPreparer";
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static Executor sExecutor;
+
+    private ContentPreparer() {
+    }
+
+    private static synchronized Executor getExecutor() {
+        if (null == sExecutor) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Starts the preparation of a content view, must be called on the main thread.
+     *
+     * @param maxWidth max width of the text, -1 if not set
+     * @param padding  padding the tooltip applies to the content view, -1 to keep the one of the layout
+     */
+    static Request prepare(
+            Context context, int layoutResId, CharSequence text, int textStyleResId, int maxWidth, int padding) {
+        // the inflater of the activity is not thread safe, the worker uses its own copy
+        final LayoutInflater inflater = LayoutInflater.from(context).cloneInContext(context);
+        final DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+
+        Request request = new Request(
+                inflater, layoutResId, text, textStyleResId, maxWidth, padding, metrics.widthPixels, metrics.heightPixels);
+        getExecutor().execute(request);
+        return request;
+    }
+
+    static final class Request implements Runnable {
+        private final LayoutInflater inflater;
+        private final int layoutResId;
+        private final int textStyleResId;
+        private final int maxWidth;
+        private final int padding;
+        private final int width;
+        private final int height;
+        final CharSequence text;
+        // padding and text max width of the inflated layout, before the ones of the tooltip are applied
+        final Rect layoutPadding = new Rect();
+        int layoutMaxWidth = -1;
+
+        private View mView;
+        private boolean mDone;
+        private boolean mCancelled;
+
+        Request(
+                LayoutInflater inflater, int layoutResId, CharSequence text, int textStyleResId, int maxWidth, int padding,
+                int width, int height) {
+            this.inflater = inflater;
+            this.layoutResId = layoutResId;
+            this.text = text;
+            this.textStyleResId = textStyleResId;
+            this.maxWidth = maxWidth;
+            this.padding = padding;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (mCancelled) return;
+            }
+
+            View view;
+            try {
+                view = inflater.inflate(layoutResId, null, false);
+
+                // same padding and max width the tooltip applies once the view is attached, the
+                // bubble drawable adds no padding of its own and is not shared with the worker
+                layoutPadding.set(view.getPaddingLeft(), view.getPaddingTop(), view.getPaddingRight(), view.getPaddingBottom());
+                if (padding > -1) {
+                    view.setPadding(padding, padding, padding, padding);
+                }
+
+                TextView textView = (TextView) view.findViewById(android.R.id.text1);
+                if (null != textView) {
+                    textView.setTextAppearance(inflater.getContext(), textStyleResId);
+                    textView.setText(HtmlCache.fromHtml(text));
+                    if (maxWidth > -1) {
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                            layoutMaxWidth = textView.getMaxWidth();
+                        }
+                        textView.setMaxWidth(maxWidth);
+                    }
+                }
+
+                // builds the text layout with the constraints of the main thread measure pass,
+                // which is then much cheaper
+                view.measure(
+                        View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.AT_MOST),
+                        View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.AT_MOST));
+            } catch (RuntimeException e) {
+                // e.g. a custom view requiring a looper, will be inflated on the main thread
+                if (DBG) Log.w(TAG, "failed to prepare the content view: " + e);
+                view = null;
+            }
+
+            synchronized (this) {
+                if (!mCancelled) {
+                    mView = view;
+                }
+                mDone = true;
+            }
+        }
+
+        /**
+         * Takes the prepared view and closes the request
+         *
+         * @return null if the view is not ready yet, or could not be prepared
+         */
+        synchronized View take() {
+            final View view = mDone ? mView : null;
+            mCancelled = true;
+            mView = null;
+            if (DBG) Log.v(TAG, "take: " + (null != view ? "ready" : "not ready"));
+            return view;
+        }
+
+        synchronized void cancel() {
+            mCancelled = true;
+            mView = null;
+        }
+    }
+}
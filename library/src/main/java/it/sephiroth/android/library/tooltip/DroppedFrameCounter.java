@@ -0,0 +1,47 @@
+package it.sephiroth.android.library.tooltip;
+
+/**
+ * Counts the frames dropped between {@link #start()} and {@link #stop()},
+ * by observing the time between consecutive frames.
+ */
+final class DroppedFrameCounter implements FrameHandler.Callback {
+    private final FrameHandler mFrameHandler = new FrameHandler(this);
+    private final long mFrameIntervalNanos;
+    private long mLastFrameTimeNanos;
+    private int mDroppedFrames;
+    private boolean mRunning;
+
+    DroppedFrameCounter(float refreshRate) {
+        mFrameIntervalNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60f));
+    }
+
+    void start() {
+        mDroppedFrames = 0;
+        mLastFrameTimeNanos = 0;
+        mRunning = true;
+        mFrameHandler.schedule();
+    }
+
+    /**
+     * @return the number of dropped frames since {@link #start()}
+     */
+    int stop() {
+        mRunning = false;
+        mFrameHandler.cancel();
+        return mDroppedFrames;
+    }
+
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        if (!mRunning) return;
+
+        if (mLastFrameTimeNanos > 0) {
+            final long skipped = (frameTimeNanos - mLastFrameTimeNanos) / mFrameIntervalNanos - 1;
+            if (skipped > 0) {
+                mDroppedFrames += skipped;
+            }
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+        mFrameHandler.schedule();
+    }
+}
@@ -0,0 +1,91 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Runs a callback once on the next frame of the main thread. Uses the {@link Choreographer}
+ * where available, or a frame-delayed message on older platforms.
+ * Multiple {@link #schedule()} calls before the frame are coalesced.
+ */
+final class FrameHandler {
+    static final long FRAME_DELAY_MS = 16;
+
+    static interface Callback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    private final Callback mCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mRunnable;
+    private Object mFrameCallback;
+    private boolean mScheduled;
+
+    FrameHandler(final Callback callback) {
+        mCallback = callback;
+        mRunnable = new Runnable() {
+            @Override
+            public void run() {
+                onFrame(SystemClock.uptimeMillis() * 1000000L);
+            }
+        };
+    }
+
+    /**
+     * Must be called from the main thread
+     */
+    void schedule() {
+        if (mScheduled) return;
+        mScheduled = true;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postFrameCallback();
+        } else {
+            mHandler.postDelayed(mRunnable, FRAME_DELAY_MS);
+        }
+    }
+
+    void cancel() {
+        if (!mScheduled) return;
+        mScheduled = false;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            removeFrameCallback();
+        } else {
+            mHandler.removeCallbacks(mRunnable);
+        }
+    }
+
+    boolean isScheduled() {
+        return mScheduled;
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        mScheduled = false;
+        mCallback.doFrame(frameTimeNanos);
+    }
+
+    @TargetApi (Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (null == mFrameCallback) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(final long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+
+    @TargetApi (Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrameCallback() {
+        if (null != mFrameCallback) {
+            Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+        }
+    }
+}
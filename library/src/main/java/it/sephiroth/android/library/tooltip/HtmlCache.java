@@ -0,0 +1,37 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.text.Html;
+import android.text.SpannedString;
+import android.util.LruCache;
+
+/**
+ * Process wide cache of the tooltip texts parsed with {@link Html#fromHtml(String)}.<br />
+ * Only plain strings are parsed as html, any other {@link CharSequence}
+ * ({@link android.text.Spanned} included) is used as it is.<br />
+ * The cached texts are immutable {@link SpannedString}s: the same instance is shared by
+ * all the tooltips, and read by the {@link ContentPreparer} worker while the main thread
+ * uses it, which the {@link android.text.SpannableStringBuilder} returned by the parser
+ * does not allow.
+ */
+final class HtmlCache {
+    private static final int MAX_SIZE = 32;
+
+    private static final LruCache<String, CharSequence> sCache = new LruCache<String, CharSequence>(MAX_SIZE);
+
+    private HtmlCache() {
+    }
+
+    static CharSequence fromHtml(CharSequence text) {
+        if (!(text instanceof String)) {
+            return text;
+        }
+
+        final String source = (String) text;
+        CharSequence result = sCache.get(source);
+        if (null == result) {
+            result = new SpannedString(Html.fromHtml(source));
+            sCache.put(source, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,156 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * LRU cache of the solved tooltip placements.<br />
+ * The key covers everything the placement depends on: tooltip id, preferred gravity,
+ * anchor rect, bubble size, visible display frame and the obstacles in the area the
+ * candidates can cover, so that bubbles moving elsewhere on the screen do not invalidate it.
+ * Layout passes repeating the same inputs (keyboard toggles, status bar animations,
+ * {@link TooltipManager#update(int)}) reuse the last result instead of solving again.<br />
+ * Every layout pass places all the tooltips in turn: the cache holds at least
+ * {@link #ENTRIES_PER_TOOLTIP} placements for every tooltip shown, else a screen with more
+ * tooltips than entries would evict each placement before it is asked again.
+ * Main thread only.
+ */
+public final class PlacementCache {
+    private static final String TAG = "PlacementCache";
+
+    static final int KEY_SIZE = 15;
+    static final int DEFAULT_MAX_SIZE = 8;
+    // the current placement and the previous one, e.g. with and without the keyboard
+    static final int ENTRIES_PER_TOOLTIP = 2;
+
+    private static final class Entry {
+        final int[] key = new int[KEY_SIZE];
+        TooltipManager.Gravity gravity;
+        int left;
+        int top;
+        int right;
+        int bottom;
+        int pointX;
+        int pointY;
+        long lastUse;
+    }
+
+    private Entry[] mEntries = new Entry[DEFAULT_MAX_SIZE];
+    private int mMaxSize = DEFAULT_MAX_SIZE;
+    private int mTooltipCount;
+    private int mSize;
+    private long mClock;
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * @param maxSize max number of placements kept, 0 disables the cache. The cache grows
+     *                past it while more than maxSize / {@link #ENTRIES_PER_TOOLTIP} tooltips are shown.
+     * @throws IllegalArgumentException if maxSize is negative
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must be >= 0, was " + maxSize);
+        }
+        mMaxSize = maxSize;
+        resize(maxSize == 0 ? 0 : Math.max(maxSize, mTooltipCount * ENTRIES_PER_TOOLTIP));
+    }
+
+    /**
+     * Grows the cache for the given number of tooltips shown at the same time.
+     * It is not shrunk when they are hidden, the peak is kept.
+     */
+    void setTooltipCount(int count) {
+        mTooltipCount = Math.max(mTooltipCount, count);
+        if (mMaxSize > 0 && count * ENTRIES_PER_TOOLTIP > mEntries.length) {
+            resize(count * ENTRIES_PER_TOOLTIP);
+        }
+    }
+
+    int getCapacity() {
+        return mEntries.length;
+    }
+
+    private void resize(int capacity) {
+        if (capacity == mEntries.length) return;
+        mEntries = Arrays.copyOf(mEntries, capacity);
+        mSize = Math.min(mSize, capacity);
+    }
+
+    public int getHitCount() {
+        return mHits;
+    }
+
+    public int getMissCount() {
+        return mMisses;
+    }
+
+    public void clear() {
+        Arrays.fill(mEntries, null);
+        mSize = 0;
+    }
+
+    /**
+     * Copies the cached placement for the given key into the result fields of the solver
+     *
+     * @return false if the placement is not cached
+     */
+    boolean get(int[] key, PlacementSolver result) {
+        for (int i = 0; i < mSize; i++) {
+            final Entry entry = mEntries[i];
+            if (Arrays.equals(entry.key, key)) {
+                entry.lastUse = ++mClock;
+                result.gravity = entry.gravity;
+                result.left = entry.left;
+                result.top = entry.top;
+                result.right = entry.right;
+                result.bottom = entry.bottom;
+                result.pointX = entry.pointX;
+                result.pointY = entry.pointY;
+                result.attempts = 0;
+                mHits++;
+                return true;
+            }
+        }
+        mMisses++;
+        if (DBG) Log.v(TAG, "miss, " + mHits + " hits, " + mMisses + " misses");
+        return false;
+    }
+
+    /**
+     * Stores the result of a successful solve, evicting the least recently used placement
+     */
+    void put(int[] key, PlacementSolver result) {
+        if (mEntries.length == 0) return;
+
+        Entry entry;
+        if (mSize < mEntries.length) {
+            entry = mEntries[mSize];
+            if (null == entry) {
+                entry = new Entry();
+                mEntries[mSize] = entry;
+            }
+            mSize++;
+        } else {
+            entry = mEntries[0];
+            for (int i = 1; i < mSize; i++) {
+                if (mEntries[i].lastUse < entry.lastUse) {
+                    entry = mEntries[i];
+                }
+            }
+        }
+
+        System.arraycopy(key, 0, entry.key, 0, KEY_SIZE);
+        entry.gravity = result.gravity;
+        entry.left = result.left;
+        entry.top = result.top;
+        entry.right = result.right;
+        entry.bottom = result.bottom;
+        entry.pointX = result.pointX;
+        entry.pointY = result.pointY;
+        entry.lastUse = ++mClock;
+    }
+}
@@ -0,0 +1,258 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.graphics.Rect;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.Gravity;
+
+/**
+ * Solves the position of a tooltip bubble around its anchor.<br />
+ * The preferred gravity is tried first, then the remaining ones in the fixed order
+ * LEFT, RIGHT, TOP, BOTTOM, CENTER. Candidates overlapping one of the {@link Obstacles}
+ * are skipped, unless none of the candidates is free: in that case the first one
+ * fitting into the screen is used. The solver works on primitive coordinates and
+ * keeps its result in public fields, so an instance can be reused for every layout
+ * pass without allocating.
+ */
+final class PlacementSolver {
+
+    /**
+     * Areas the solved bubble should not overlap
+     */
+    interface Obstacles {
+        /**
+         * @param exclude owner of the tooltip being placed, its own area must be ignored
+         */
+        boolean intersects(Object exclude, int left, int top, int right, int bottom);
+    }
+
+    private static final Gravity[] GRAVITIES = Gravity.values();
+
+    /**
+     * Candidate order for every preferred gravity, indexed by {@link Gravity#ordinal()}
+     */
+    private static final Gravity[][] CANDIDATES = new Gravity[GRAVITIES.length][];
+
+    static {
+        for (int i = 0; i < GRAVITIES.length; i++) {
+            final Gravity[] order = new Gravity[GRAVITIES.length];
+            order[0] = GRAVITIES[i];
+            for (int j = 0, k = 1; j < GRAVITIES.length; j++) {
+                if (j != i) {
+                    order[k++] = GRAVITIES[j];
+                }
+            }
+            CANDIDATES[i] = order;
+        }
+    }
+
+    // solved bubble rect
+    int left;
+    int top;
+    int right;
+    int bottom;
+
+    // arrow destination point, in screen coordinates
+    int pointX;
+    int pointY;
+
+    // gravity of the solved position, null if no position could be found
+    Gravity gravity;
+
+    // number of candidates evaluated by the last solve
+    int attempts;
+
+    /**
+     * @param preferred          the gravity to try first
+     * @param anchorLeft         anchor rect, in screen coordinates
+     * @param width              measured width of the bubble
+     * @param height             measured height of the bubble
+     * @param screenLeft         visible screen rect the bubble should be restricted to
+     * @param restrict           if false the first candidate is always accepted
+     * @param centerHorizontally center the solved rect horizontally on the screen
+     * @param obstacles          the areas to avoid, can be null
+     * @param owner              owner of the tooltip being placed, passed to the obstacles
+     * @return false if none of the candidates fits into the screen
+     */
+    boolean solve(
+            Gravity preferred,
+            int anchorLeft, int anchorTop, int anchorRight, int anchorBottom,
+            int width, int height,
+            int screenLeft, int screenTop, int screenRight, int screenBottom,
+            boolean restrict, boolean centerHorizontally,
+            Obstacles obstacles, Object owner) {
+
+        final Gravity[] candidates = CANDIDATES[preferred.ordinal()];
+        final int centerX = (anchorLeft + anchorRight) / 2;
+        final int centerY = (anchorTop + anchorBottom) / 2;
+
+        Gravity fallback = null;
+        gravity = null;
+        attempts = 0;
+
+        for (Gravity candidate : candidates) {
+            attempts++;
+
+            if (place(candidate, anchorLeft, anchorTop, anchorRight, anchorBottom, centerX, centerY, width, height,
+                    screenLeft, screenTop, screenRight, screenBottom, restrict)) {
+
+                if (centerHorizontally) {
+                    offset((screenRight - right - left) / 2, 0);
+                }
+
+                if (null == obstacles || !obstacles.intersects(owner, left, top, right, bottom)) {
+                    gravity = candidate;
+                    return true;
+                }
+
+                if (null == fallback) {
+                    fallback = candidate;
+                }
+            }
+        }
+
+        if (null != fallback) {
+            // every candidate overlaps something, keep the first one fitting into the screen
+            place(fallback, anchorLeft, anchorTop, anchorRight, anchorBottom, centerX, centerY, width, height,
+                    screenLeft, screenTop, screenRight, screenBottom, restrict);
+            if (centerHorizontally) {
+                offset((screenRight - right - left) / 2, 0);
+            }
+            gravity = fallback;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Computes the area covered by all the candidates of a solve with the same arguments:
+     * the anchor grown by the bubble size on every side, extended to the screen edges where
+     * the bubble can be centered or slid back into the screen.
+     *
+     * @param outRect receives the area
+     */
+    static void getCandidateBounds(
+            Rect outRect,
+            int anchorLeft, int anchorTop, int anchorRight, int anchorBottom,
+            int width, int height,
+            int screenLeft, int screenTop, int screenRight, int screenBottom,
+            boolean restrict, boolean centerHorizontally) {
+
+        outRect.set(anchorLeft - width, anchorTop - height, anchorRight + width, anchorBottom + height);
+
+        if (restrict && (anchorLeft < screenLeft || anchorTop < screenTop || anchorRight > screenRight
+                || anchorBottom > screenBottom)) {
+            // a bubble anchored outside of the screen is slid back into it
+            outRect.union(screenLeft, screenTop, screenRight, screenBottom);
+        } else if (centerHorizontally) {
+            outRect.union(screenLeft, outRect.top, screenRight, outRect.bottom);
+        }
+    }
+
+    private boolean place(
+            Gravity candidate,
+            int anchorLeft, int anchorTop, int anchorRight, int anchorBottom, int centerX, int centerY,
+            int width, int height,
+            int screenLeft, int screenTop, int screenRight, int screenBottom,
+            boolean restrict) {
+
+        switch (candidate) {
+            case BOTTOM:
+                set(centerX - width / 2, anchorBottom, centerX + width / 2, anchorBottom + height);
+                pointX = centerX;
+                pointY = anchorBottom;
+                break;
+
+            case TOP:
+                set(centerX - width / 2, anchorTop - height, centerX + width / 2, anchorTop);
+                pointX = centerX;
+                pointY = anchorTop;
+                break;
+
+            case RIGHT:
+                set(anchorRight, centerY - height / 2, anchorRight + width, centerY + height / 2);
+                pointX = anchorRight;
+                pointY = centerY;
+                break;
+
+            case LEFT:
+                set(anchorLeft - width, centerY - height / 2, anchorLeft, centerY + height / 2);
+                pointX = anchorLeft;
+                pointY = centerY;
+                break;
+
+            default:
+                set(centerX - width / 2, centerY - height / 2, centerX + width / 2, centerY + height / 2);
+                pointX = centerX;
+                pointY = centerY;
+                break;
+        }
+
+        if (!restrict || (left >= screenLeft && top >= screenTop && right <= screenRight && bottom <= screenBottom)) {
+            return true;
+        }
+
+        // slide along the anchor edge, reject only when the bubble
+        // overflows the screen on the side facing away from the anchor
+        switch (candidate) {
+            case BOTTOM:
+                clampHorizontal(screenLeft, screenRight);
+                if (bottom > screenBottom) return false;
+                clampVertical(screenTop, screenBottom);
+                break;
+
+            case TOP:
+                clampHorizontal(screenLeft, screenRight);
+                if (top < screenTop) return false;
+                clampVertical(screenTop, screenBottom);
+                break;
+
+            case RIGHT:
+                clampVertical(screenTop, screenBottom);
+                if (right > screenRight) return false;
+                clampHorizontal(screenLeft, screenRight);
+                break;
+
+            case LEFT:
+                clampVertical(screenTop, screenBottom);
+                if (left < screenLeft) return false;
+                clampHorizontal(screenLeft, screenRight);
+                break;
+
+            default:
+                clampVertical(screenTop, screenBottom);
+                clampHorizontal(screenLeft, screenRight);
+                break;
+        }
+        return true;
+    }
+
+    private void set(int left, int top, int right, int bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    private void clampHorizontal(int screenLeft, int screenRight) {
+        if (right > screenRight) {
+            offset(screenRight - right, 0);
+        } else if (left < screenLeft) {
+            offset(screenLeft - left, 0);
+        }
+    }
+
+    private void clampVertical(int screenTop, int screenBottom) {
+        if (bottom > screenBottom) {
+            offset(0, screenBottom - bottom);
+        } else if (top < screenTop) {
+            offset(0, screenTop - top);
+        }
+    }
+
+    private void offset(int dx, int dy) {
+        left += dx;
+        right += dx;
+        top += dy;
+        bottom += dy;
+    }
+}
@@ -0,0 +1,418 @@
+package it.sephiroth.android.library.tooltip;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Spatial index of keyed rects, backed by an R-tree.<br />
+ * Rects are grouped in nodes of at most {@link #MAX_ENTRIES} entries under their bounding
+ * box, nodes are split along the quadratic split of Guttman's R-tree. An intersection
+ * query only descends into the nodes whose box intersects the query rect: O(log n + k),
+ * k being the number of rects found, as long as the rects do not pile up on each other,
+ * which is the case of the tooltip bubbles. Queries do not allocate.<br />
+ * Keys are compared with {@link Object#equals(Object)}: tooltips use their own view as
+ * key, so that two views sharing an id never touch each other's rect.<br />
+ * Every rect is stamped when added or moved, see {@link #getRegionVersion(Object, int, int, int, int)}.
+ */
+final class RectIndex {
+    static final int MAX_ENTRIES = 8;
+    static final int MIN_ENTRIES = 3;
+
+    private static class Box {
+        int left;
+        int top;
+        int right;
+        int bottom;
+        Node parent;
+
+        final boolean intersects(int left, int top, int right, int bottom) {
+            return left < this.right && this.left < right && top < this.bottom && this.top < bottom;
+        }
+
+        final long area() {
+            return (long) (right - left) * (bottom - top);
+        }
+
+        /**
+         * @return the growth of the area of this box once extended to include the given one
+         */
+        final long enlargement(Box box) {
+            final long union = (long) (Math.max(right, box.right) - Math.min(left, box.left))
+                    * (Math.max(bottom, box.bottom) - Math.min(top, box.top));
+            return union - area();
+        }
+    }
+
+    private static final class Entry extends Box {
+        final Object key;
+        int stamp;
+
+        Entry(Object key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Node extends Box {
+        final boolean leaf;
+        // one extra slot, an overflowing node is split right after the add
+        final Box[] children = new Box[MAX_ENTRIES + 1];
+        int size;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        void add(Box child) {
+            children[size++] = child;
+            child.parent = this;
+        }
+
+        void remove(Box child) {
+            for (int i = 0; i < size; i++) {
+                if (children[i] == child) {
+                    children[i] = children[--size];
+                    children[size] = null;
+                    child.parent = null;
+                    return;
+                }
+            }
+        }
+
+        void updateBounds() {
+            if (size == 0) {
+                left = top = right = bottom = 0;
+                return;
+            }
+            left = children[0].left;
+            top = children[0].top;
+            right = children[0].right;
+            bottom = children[0].bottom;
+            for (int i = 1; i < size; i++) {
+                final Box child = children[i];
+                left = Math.min(left, child.left);
+                top = Math.min(top, child.top);
+                right = Math.max(right, child.right);
+                bottom = Math.max(bottom, child.bottom);
+            }
+        }
+    }
+
+    // shared by all the indexes, so that the stamps of different indexes can be compared
+    private static int sStamp;
+
+    private final HashMap<Object, Entry> mEntries = new HashMap<Object, Entry>();
+    private Node mRoot = new Node(true);
+
+    // results of the current regionVersion walk
+    private int mVersionCount;
+    private int mVersionStamp;
+
+    int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Adds or moves the rect registered with the given key
+     *
+     * @return false if the same rect was already registered with the key
+     */
+    boolean put(Object key, int left, int top, int right, int bottom) {
+        Entry entry = mEntries.get(key);
+        if (null != entry) {
+            if (entry.left == left && entry.top == top && entry.right == right && entry.bottom == bottom) {
+                return false;
+            }
+            if (null != entry.parent) {
+                delete(entry);
+            }
+        } else {
+            entry = new Entry(key);
+            mEntries.put(key, entry);
+        }
+        entry.left = left;
+        entry.top = top;
+        entry.right = right;
+        entry.bottom = bottom;
+        entry.stamp = ++sStamp;
+
+        // an empty rect never intersects anything, it is only kept in the map
+        if (left < right && top < bottom) {
+            insert(entry);
+        }
+        return true;
+    }
+
+    boolean remove(Object key) {
+        final Entry entry = mEntries.remove(key);
+        if (null != entry) {
+            if (null != entry.parent) {
+                delete(entry);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    boolean clear() {
+        if (mEntries.isEmpty()) {
+            return false;
+        }
+        mEntries.clear();
+        mRoot = new Node(true);
+        return true;
+    }
+
+    /**
+     * @return true if the given rect intersects any registered rect
+     */
+    boolean intersects(int left, int top, int right, int bottom) {
+        return intersects(null, left, top, right, bottom);
+    }
+
+    /**
+     * @param exclude key ignored by the query, usually the key of the rect being placed. Can be null.
+     * @return true if the given rect intersects any registered rect but the excluded one
+     */
+    boolean intersects(Object exclude, int left, int top, int right, int bottom) {
+        if (mRoot.size == 0 || left >= right || top >= bottom) {
+            return false;
+        }
+        return intersects(mRoot, exclude, left, top, right, bottom);
+    }
+
+    private static boolean intersects(Node node, Object exclude, int left, int top, int right, int bottom) {
+        for (int i = 0; i < node.size; i++) {
+            final Box child = node.children[i];
+            if (!child.intersects(left, top, right, bottom)) continue;
+
+            if (node.leaf) {
+                if (null == exclude || !exclude.equals(((Entry) child).key)) {
+                    return true;
+                }
+            } else if (intersects((Node) child, exclude, left, top, right, bottom)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Summary of the rects intersecting the given area: their number in the high 32 bits,
+     * their highest stamp in the low ones. A rect can only leave the area by being moved
+     * or removed, and it can only enter it with a new, higher stamp: the version of the
+     * area changes if and only if the rects intersecting it change, regardless of what
+     * happens elsewhere.
+     */
+    long getRegionVersion(int left, int top, int right, int bottom) {
+        return getRegionVersion(null, left, top, right, bottom);
+    }
+
+    /**
+     * @param exclude key ignored, usually the key of the rect being placed. Can be null.
+     * @see #getRegionVersion(int, int, int, int)
+     */
+    long getRegionVersion(Object exclude, int left, int top, int right, int bottom) {
+        if (mRoot.size == 0 || left >= right || top >= bottom) {
+            return 0;
+        }
+        mVersionCount = 0;
+        mVersionStamp = 0;
+        regionVersion(mRoot, exclude, left, top, right, bottom);
+        return (long) mVersionCount << 32 | (mVersionStamp & 0xffffffffL);
+    }
+
+    private void regionVersion(Node node, Object exclude, int left, int top, int right, int bottom) {
+        for (int i = 0; i < node.size; i++) {
+            final Box child = node.children[i];
+            if (!child.intersects(left, top, right, bottom)) continue;
+
+            if (node.leaf) {
+                final Entry entry = (Entry) child;
+                if (null == exclude || !exclude.equals(entry.key)) {
+                    mVersionCount++;
+                    mVersionStamp = Math.max(mVersionStamp, entry.stamp);
+                }
+            } else {
+                regionVersion((Node) child, exclude, left, top, right, bottom);
+            }
+        }
+    }
+
+    private void insert(Entry entry) {
+        Node node = mRoot;
+        while (!node.leaf) {
+            node = chooseChild(node, entry);
+        }
+        node.add(entry);
+
+        // split the overflowing nodes and grow the boxes up to the root
+        while (null != node) {
+            if (node.size > MAX_ENTRIES) {
+                final Node sibling = split(node);
+                Node parent = node.parent;
+                if (null == parent) {
+                    parent = new Node(false);
+                    parent.add(node);
+                    mRoot = parent;
+                }
+                parent.add(sibling);
+            }
+            node.updateBounds();
+            node = node.parent;
+        }
+    }
+
+    /**
+     * @return the child needing the least enlargement to include the given entry,
+     * the smallest one on ties
+     */
+    private static Node chooseChild(Node node, Box entry) {
+        Node best = null;
+        long bestEnlargement = Long.MAX_VALUE;
+        long bestArea = Long.MAX_VALUE;
+        for (int i = 0; i < node.size; i++) {
+            final Node child = (Node) node.children[i];
+            final long enlargement = child.enlargement(entry);
+            final long area = child.area();
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                best = child;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Quadratic split: the two children wasting the most area together seed the two
+     * nodes, then the remaining ones go, most decided first, to the node they enlarge the least.
+     *
+     * @return the new sibling, holding part of the children of the given node
+     */
+    private static Node split(Node node) {
+        final int count = node.size;
+        final Box[] boxes = new Box[count];
+        System.arraycopy(node.children, 0, boxes, 0, count);
+        for (int i = 0; i < count; i++) {
+            node.children[i] = null;
+        }
+        node.size = 0;
+
+        int seedA = 0;
+        int seedB = 1;
+        long worst = Long.MIN_VALUE;
+        for (int i = 0; i < count - 1; i++) {
+            for (int j = i + 1; j < count; j++) {
+                final long waste = boxes[i].enlargement(boxes[j]) - boxes[j].area();
+                if (waste > worst) {
+                    worst = waste;
+                    seedA = i;
+                    seedB = j;
+                }
+            }
+        }
+
+        final Node sibling = new Node(node.leaf);
+        node.add(boxes[seedA]);
+        node.updateBounds();
+        sibling.add(boxes[seedB]);
+        sibling.updateBounds();
+        boxes[seedA] = null;
+        boxes[seedB] = null;
+        int remaining = count - 2;
+
+        while (remaining > 0) {
+            // a node which needs all the remaining children to be valid takes them
+            final Node needy =
+                    node.size + remaining <= MIN_ENTRIES ? node : sibling.size + remaining <= MIN_ENTRIES ? sibling : null;
+            if (null != needy) {
+                for (Box box : boxes) {
+                    if (null != box) {
+                        needy.add(box);
+                    }
+                }
+                needy.updateBounds();
+                break;
+            }
+
+            int next = -1;
+            long nextDiff = -1;
+            long nextA = 0;
+            long nextB = 0;
+            for (int i = 0; i < count; i++) {
+                if (null == boxes[i]) continue;
+                final long a = node.enlargement(boxes[i]);
+                final long b = sibling.enlargement(boxes[i]);
+                final long diff = Math.abs(a - b);
+                if (diff > nextDiff) {
+                    next = i;
+                    nextDiff = diff;
+                    nextA = a;
+                    nextB = b;
+                }
+            }
+
+            final Box box = boxes[next];
+            boxes[next] = null;
+            remaining--;
+
+            final Node target;
+            if (nextA != nextB) {
+                target = nextA < nextB ? node : sibling;
+            } else if (node.area() != sibling.area()) {
+                target = node.area() < sibling.area() ? node : sibling;
+            } else {
+                target = node.size <= sibling.size ? node : sibling;
+            }
+            target.add(box);
+            target.updateBounds();
+        }
+        return sibling;
+    }
+
+    private void delete(Entry entry) {
+        Node node = entry.parent;
+        node.remove(entry);
+
+        // underfull nodes are dropped and their entries inserted again
+        ArrayList<Entry> orphans = null;
+        while (node != mRoot) {
+            final Node parent = node.parent;
+            if (node.size < MIN_ENTRIES) {
+                parent.remove(node);
+                if (null == orphans) {
+                    orphans = new ArrayList<Entry>();
+                }
+                collect(node, orphans);
+            } else {
+                node.updateBounds();
+            }
+            node = parent;
+        }
+        mRoot.updateBounds();
+
+        while (!mRoot.leaf && mRoot.size == 1) {
+            mRoot = (Node) mRoot.children[0];
+            mRoot.parent = null;
+        }
+        if (!mRoot.leaf && mRoot.size == 0) {
+            mRoot = new Node(true);
+        }
+
+        if (null != orphans) {
+            for (Entry orphan : orphans) {
+                insert(orphan);
+            }
+        }
+    }
+
+    private static void collect(Node node, ArrayList<Entry> out) {
+        for (int i = 0; i < node.size; i++) {
+            if (node.leaf) {
+                out.add((Entry) node.children[i]);
+            } else {
+                collect((Node) node.children[i], out);
+            }
+        }
+    }
+}
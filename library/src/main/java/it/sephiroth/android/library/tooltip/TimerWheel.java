@@ -0,0 +1,254 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * Hashed timer wheel running the show, activate and hide deadlines of all the tooltips
+ * of a manager.<br />
+ * Time is split in ticks of {@link #TICK_MS}, every timer is linked into the slot of its
+ * deadline tick, so {@link #schedule(Timer, long)} and {@link #cancel(Timer)} are O(1).
+ * A single callback is posted for the next non empty slot, regardless of the number
+ * of timers. Timers never fire early, and at most one tick late.<br />
+ * The {@link Clock} and the {@link Waker} can be replaced, so that the wheel can be driven
+ * by hand through {@link #advance()}. Main thread only.
+ */
+final class TimerWheel {
+    private static final String TAG = "TimerWheel";
+
+    static final long TICK_MS = 10;
+    static final int SLOTS = 256;
+    private static final int MASK = SLOTS - 1;
+
+    // slot index of the timers being fired
+    private static final int EXPIRED = SLOTS;
+    private static final int NONE = -1;
+
+    interface Clock {
+        long uptimeMillis();
+    }
+
+    /**
+     * Wakes the wheel up, calling {@link #advance()}, once the given delay elapsed
+     */
+    interface Waker {
+        void wakeUp(TimerWheel wheel, long delayMs);
+
+        void cancel(TimerWheel wheel);
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+    };
+
+    /**
+     * A timer, bound to its callback once and scheduled any number of times
+     */
+    static final class Timer {
+        final Runnable callback;
+        long tick;
+        int slot = NONE;
+        Timer prev;
+        Timer next;
+
+        Timer(Runnable callback) {
+            this.callback = callback;
+        }
+
+        boolean isScheduled() {
+            return slot != NONE;
+        }
+    }
+
+    private static final class HandlerWaker implements Waker {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private Runnable mRunnable;
+
+        @Override
+        public void wakeUp(final TimerWheel wheel, final long delayMs) {
+            if (null == mRunnable) {
+                mRunnable = new Runnable() {
+                    @Override
+                    public void run() {
+                        wheel.advance();
+                    }
+                };
+            } else {
+                mHandler.removeCallbacks(mRunnable);
+            }
+            mHandler.postDelayed(mRunnable, delayMs);
+        }
+
+        @Override
+        public void cancel(final TimerWheel wheel) {
+            if (null != mRunnable) {
+                mHandler.removeCallbacks(mRunnable);
+            }
+        }
+    }
+
+    private final Clock mClock;
+    private final Waker mWaker;
+    // SLOTS lists plus the expired one
+    private final Timer[] mHeads = new Timer[SLOTS + 1];
+    private int mCount;
+    // last tick processed
+    private long mTick;
+    // tick the waker is set for, or Long.MAX_VALUE
+    private long mWakeTick = Long.MAX_VALUE;
+    private boolean mAdvancing;
+
+    TimerWheel() {
+        this(SYSTEM_CLOCK, new HandlerWaker());
+    }
+
+    TimerWheel(Clock clock, Waker waker) {
+        mClock = clock;
+        mWaker = waker;
+    }
+
+    int size() {
+        return mCount;
+    }
+
+    /**
+     * Schedules the timer, replacing its previous deadline if already scheduled
+     */
+    void schedule(Timer timer, long delayMs) {
+        final long now = mClock.uptimeMillis();
+        cancel(timer);
+
+        if (mCount == 0) {
+            mTick = now / TICK_MS;
+        }
+
+        // rounded up, a timer never fires early
+        long tick = (now + Math.max(0, delayMs) + TICK_MS - 1) / TICK_MS;
+        if (tick <= mTick) {
+            tick = mTick + 1;
+        }
+
+        timer.tick = tick;
+        link(timer, (int) (tick & MASK));
+        mCount++;
+
+        if (!mAdvancing && tick < mWakeTick) {
+            wakeUpAt(tick, now);
+        }
+    }
+
+    void cancel(Timer timer) {
+        if (timer.slot == NONE) return;
+        unlink(timer);
+        mCount--;
+
+        if (!mAdvancing && mCount == 0 && mWakeTick != Long.MAX_VALUE) {
+            mWakeTick = Long.MAX_VALUE;
+            mWaker.cancel(this);
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < mHeads.length; i++) {
+            Timer timer = mHeads[i];
+            while (null != timer) {
+                final Timer next = timer.next;
+                timer.slot = NONE;
+                timer.prev = null;
+                timer.next = null;
+                timer = next;
+            }
+            mHeads[i] = null;
+        }
+        mCount = 0;
+        mWakeTick = Long.MAX_VALUE;
+        mWaker.cancel(this);
+    }
+
+    /**
+     * Fires all the timers whose deadline has passed and sets the waker for the next one
+     */
+    void advance() {
+        mWakeTick = Long.MAX_VALUE;
+        if (mCount == 0) return;
+
+        final long nowTick = mClock.uptimeMillis() / TICK_MS;
+
+        // a full revolution visits every slot
+        final long last = Math.min(nowTick, mTick + SLOTS);
+        for (long t = mTick + 1; t <= last; t++) {
+            Timer timer = mHeads[(int) (t & MASK)];
+            while (null != timer) {
+                final Timer next = timer.next;
+                if (timer.tick <= nowTick) {
+                    unlink(timer);
+                    link(timer, EXPIRED);
+                }
+                timer = next;
+            }
+        }
+        mTick = Math.max(mTick, nowTick);
+
+        // the callbacks can schedule and cancel other timers, expired ones included
+        mAdvancing = true;
+        try {
+            Timer timer;
+            while (null != (timer = mHeads[EXPIRED])) {
+                unlink(timer);
+                mCount--;
+                timer.callback.run();
+            }
+        } finally {
+            mAdvancing = false;
+        }
+
+        if (mCount > 0) {
+            for (long t = mTick + 1; t <= mTick + SLOTS; t++) {
+                if (null != mHeads[(int) (t & MASK)]) {
+                    wakeUpAt(t, mClock.uptimeMillis());
+                    break;
+                }
+            }
+        } else {
+            mWaker.cancel(this);
+        }
+    }
+
+    private void wakeUpAt(long tick, long now) {
+        if (DBG) Log.v(TAG, "wake up at tick " + tick + ", timers: " + mCount);
+        mWakeTick = tick;
+        mWaker.wakeUp(this, Math.max(0, tick * TICK_MS - now));
+    }
+
+    private void link(Timer timer, int slot) {
+        final Timer head = mHeads[slot];
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = head;
+        if (null != head) {
+            head.prev = timer;
+        }
+        mHeads[slot] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        if (null != timer.prev) {
+            timer.prev.next = timer.next;
+        } else {
+            mHeads[timer.slot] = timer.next;
+        }
+        if (null != timer.next) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+        timer.slot = NONE;
+    }
+}
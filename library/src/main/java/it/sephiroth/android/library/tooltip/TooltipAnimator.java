@@ -0,0 +1,207 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.animation.Animator;
+import android.animation.AnimatorInflater;
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.View;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * Show/hide animation state machine of a single tooltip.<br />
+ * The animators are inflated once per resource id and cloned for every tooltip, and the
+ * clones are kept across the show/hide cycles and the pool recycles. When a running
+ * animation is interrupted by the opposite one it is reversed from its current value,
+ * if it is a {@link ValueAnimator}, instead of being cancelled and restarted.
+ * Main thread only.
+ */
+final class TooltipAnimator implements Animator.AnimatorListener {
+    private static final String TAG = "TooltipAnimator";
+
+    static final int STATE_HIDDEN = 0;
+    static final int STATE_SHOWING = 1;
+    static final int STATE_SHOWN = 2;
+    static final int STATE_HIDING = 3;
+
+    interface Callback {
+        void onAnimationStarted(boolean in);
+
+        /**
+         * The running animation has been reversed, it is now heading to the given state
+         */
+        void onAnimationReversed(boolean in);
+
+        void onAnimationFinished(boolean in);
+
+        void onAnimationInterrupted();
+    }
+
+    private static final SparseArray<Animator> sPrototypes = new SparseArray<Animator>();
+
+    private final Callback mCallback;
+
+    private int mInResId;
+    private int mOutResId;
+    private Animator mIn;
+    private Animator mOut;
+
+    // the animator currently running, possibly reversed
+    private Animator mRunning;
+    private int mState = STATE_HIDDEN;
+    private boolean mCancelled;
+
+    TooltipAnimator(Callback callback) {
+        mCallback = callback;
+    }
+
+    private static Animator obtain(Context context, int resId) {
+        Animator prototype = sPrototypes.get(resId);
+        if (null == prototype) {
+            prototype = AnimatorInflater.loadAnimator(context, resId);
+            sPrototypes.put(resId, prototype);
+        }
+        return prototype.clone();
+    }
+
+    int getState() {
+        return mState;
+    }
+
+    boolean isRunning() {
+        return null != mRunning && mRunning.isStarted();
+    }
+
+    /**
+     * @param duration duration of the in animation, the out animation keeps its own
+     */
+    void animateIn(Context context, View target, int resId, long duration) {
+        if (mState == STATE_SHOWING || mState == STATE_SHOWN) return;
+        if (DBG) Log.v(TAG, "animateIn, state: " + mState);
+
+        if (mState == STATE_HIDING && reverseRunning(true)) {
+            return;
+        }
+
+        if (resId != mInResId || null == mIn) {
+            if (null != mIn) {
+                mIn.removeListener(this);
+            }
+            mIn = obtain(context, resId);
+            mIn.addListener(this);
+            mInResId = resId;
+        }
+
+        mIn.setDuration(duration);
+        start(mIn, target, STATE_SHOWING);
+    }
+
+    void animateOut(Context context, View target, int resId) {
+        if (mState == STATE_HIDING || mState == STATE_HIDDEN) return;
+        if (DBG) Log.v(TAG, "animateOut, state: " + mState);
+
+        if (mState == STATE_SHOWING && reverseRunning(false)) {
+            return;
+        }
+
+        if (resId != mOutResId || null == mOut) {
+            if (null != mOut) {
+                mOut.removeListener(this);
+            }
+            mOut = obtain(context, resId);
+            mOut.addListener(this);
+            mOutResId = resId;
+        }
+
+        start(mOut, target, STATE_HIDING);
+    }
+
+    /**
+     * Moves to the final state without animations
+     */
+    void jumpTo(boolean shown) {
+        cancel();
+        mState = shown ? STATE_SHOWN : STATE_HIDDEN;
+    }
+
+    /**
+     * Cancels the running animation, the state stays the one it was heading to
+     */
+    void cancel() {
+        if (null != mRunning && mRunning.isStarted()) {
+            mRunning.cancel();
+        }
+        mRunning = null;
+        if (mState == STATE_SHOWING) {
+            mState = STATE_SHOWN;
+        } else if (mState == STATE_HIDING) {
+            mState = STATE_HIDDEN;
+        }
+    }
+
+    /**
+     * Cancels the running animation and drops the target, the cloned animators are kept
+     */
+    void reset() {
+        cancel();
+        mState = STATE_HIDDEN;
+        if (null != mIn) mIn.setTarget(null);
+        if (null != mOut) mOut.setTarget(null);
+    }
+
+    private boolean reverseRunning(boolean in) {
+        if (!(mRunning instanceof ValueAnimator) || !mRunning.isStarted()) {
+            return false;
+        }
+
+        if (DBG) Log.v(TAG, "reverse running animation");
+        mState = in ? STATE_SHOWING : STATE_HIDING;
+        mCallback.onAnimationReversed(in);
+        ((ValueAnimator) mRunning).reverse();
+        return true;
+    }
+
+    private void start(Animator animator, View target, int state) {
+        if (null != mRunning && mRunning.isStarted()) {
+            mRunning.cancel();
+        }
+
+        mState = state;
+        mRunning = animator;
+        animator.setTarget(target);
+        animator.start();
+    }
+
+    @Override
+    public void onAnimationStart(final Animator animation) {
+        mCancelled = false;
+        mCallback.onAnimationStarted(mState == STATE_SHOWING);
+    }
+
+    @Override
+    public void onAnimationEnd(final Animator animation) {
+        if (animation != mRunning) return;
+
+        mRunning = null;
+
+        if (mCancelled) {
+            mCallback.onAnimationInterrupted();
+            return;
+        }
+
+        final boolean in = mState == STATE_SHOWING;
+        mState = in ? STATE_SHOWN : STATE_HIDDEN;
+        mCallback.onAnimationFinished(in);
+    }
+
+    @Override
+    public void onAnimationCancel(final Animator animation) {
+        mCancelled = true;
+    }
+
+    @Override
+    public void onAnimationRepeat(final Animator animation) {
+    }
+}
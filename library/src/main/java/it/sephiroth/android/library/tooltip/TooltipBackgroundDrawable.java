@@ -1,56 +1,548 @@
 package it.sephiroth.android.library.tooltip;
 
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
-import android.graphics.Region;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.view.View;
+import android.view.ViewTreeObserver;
 
 import java.util.List;
 
-public class TooltipBackgroundDrawable extends Drawable {
+public class TooltipBackgroundDrawable extends Drawable
+        implements ViewTreeObserver.OnGlobalLayoutListener, ViewTreeObserver.OnScrollChangedListener,
+        ValueAnimator.AnimatorUpdateListener {
+
+    private static final long SPOTLIGHT_DURATION = 250;
 
     private int mBackgroundColor;
 
+    private int mAlpha = 255;
+
     private List<View> mHighlightViews;
 
     private Drawable mHighlightDrawable;
 
+    // one cutout per highlight view, in window coordinates
+    private Rect[] mCutouts = new Rect[0];
+    private boolean mCutoutsDirty = true;
+
+    // observer the layout/scroll listeners are registered to, null if not attached
+    private ViewTreeObserver mObserver;
+
+    private TooltipManager.HighlightShape mShape = TooltipManager.HighlightShape.RECTANGLE;
+    private int mCornerRadius;
+
+    // once the spotlights are still, the background is a single fill of this path: the bounds
+    // minus the cutouts. It is built again only when the cutouts move, and the renderer keeps
+    // its mask as long as the path does not change.
+    // The path is always bounded, older hardware renderers cull paths by their bounds
+    private final Path mPath = new Path();
+    private final Path mCutoutPath = new Path();
+    private boolean mPathDirty = true;
+    private boolean mHasCutouts;
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mClearPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF mTempRect = new RectF();
+    // bounds of the displayed shapes, rounded out and clamped to the bounds of the drawable
+    private final Rect mEnvelope = new Rect();
+
+    // spotlight geometry, 4 values per cutout: where the animation
+    // started from and what is currently displayed
+    private float[] mFrom = new float[0];
+    private float[] mShown = new float[0];
+    private boolean mShownValid;
+    private boolean mShownDirty = true;
+    private float mFraction = 1;
+    private ValueAnimator mSpotlightAnimator;
+
+    /**
+     * Creates an empty, transparent background, see {@link #setup(int, List, Drawable)}
+     */
+    TooltipBackgroundDrawable() {
+        mClearPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+    }
+
     public TooltipBackgroundDrawable(Context context, TooltipManager.Builder builder) {
-        mBackgroundColor = context.getResources().getColor(builder.backgroundColorResId);
-        mHighlightViews = builder.highlightViews;
-        if (builder.highlightDrawableResId > 0) {
-            mHighlightDrawable = context.getResources().getDrawable(builder.highlightDrawableResId);
+        this();
+        setup(context, builder);
+    }
+
+    TooltipBackgroundDrawable(Context context, int backgroundColorResId, List<View> highlightViews, int highlightDrawableResId) {
+        this();
+        setup(context, backgroundColorResId, highlightViews, highlightDrawableResId);
+    }
+
+    void setup(Context context, TooltipManager.Builder builder) {
+        setup(context, builder.backgroundColorResId, builder.highlightViews, builder.highlightDrawableResId);
+        setHighlightShape(builder.highlightShape, builder.highlightCornerRadius);
+    }
+
+    /**
+     * @param cornerRadius corner radius of the {@link TooltipManager.HighlightShape#ROUND_RECT} cutouts
+     */
+    void setHighlightShape(TooltipManager.HighlightShape shape, int cornerRadius) {
+        mShape = shape;
+        mCornerRadius = cornerRadius;
+        mShownDirty = true;
+        mPathDirty = true;
+        invalidateSelf();
+    }
+
+    void setup(Context context, int backgroundColorResId, List<View> highlightViews, int highlightDrawableResId) {
+        setup(
+                context.getResources().getColor(backgroundColorResId), highlightViews,
+                highlightDrawableResId > 0 ? context.getResources().getDrawable(highlightDrawableResId) : null);
+    }
+
+    void setup(int backgroundColor, List<View> highlightViews, Drawable highlightDrawable) {
+        mBackgroundColor = backgroundColor;
+
+        final boolean attached = null != mObserver;
+        if (attached) {
+            detachHighlights();
+        }
+
+        mHighlightViews = highlightViews;
+        final int count = null != highlightViews ? highlightViews.size() : 0;
+        if (mCutouts.length != count) {
+            mCutouts = new Rect[count];
+            for (int i = 0; i < count; i++) {
+                mCutouts[i] = new Rect();
+            }
+            mFrom = new float[count * 4];
+            mShown = new float[count * 4];
+        }
+        mCutoutsDirty = true;
+        mShownDirty = true;
+        mPathDirty = true;
+        mShownValid = false;
+        mFraction = 1;
+        if (null != mSpotlightAnimator) {
+            mSpotlightAnimator.cancel();
+        }
+
+        if (attached) {
+            attachHighlights();
+        }
+
+        // own alpha, not shared with the other users of the resource
+        mHighlightDrawable = null != highlightDrawable ? highlightDrawable.mutate() : null;
+        invalidateSelf();
+    }
+
+    int getBackgroundColor() {
+        return mBackgroundColor;
+    }
+
+    List<View> getHighlightViews() {
+        return mHighlightViews;
+    }
+
+    Drawable getHighlightDrawable() {
+        return mHighlightDrawable;
+    }
+
+    TooltipManager.HighlightShape getHighlightShape() {
+        return mShape;
+    }
+
+    int getCornerRadius() {
+        return mCornerRadius;
+    }
+
+    /**
+     * Starts listening to the layout and scroll changes of the window holding the
+     * highlight views, the cutouts are computed again only after such a change.
+     * Called by the view owning the drawable when it is attached.
+     */
+    void attachHighlights() {
+        if (null != mObserver || null == mHighlightViews || mHighlightViews.isEmpty()) return;
+
+        mObserver = mHighlightViews.get(0).getViewTreeObserver();
+        if (mObserver.isAlive()) {
+            mObserver.addOnGlobalLayoutListener(this);
+            mObserver.addOnScrollChangedListener(this);
+        }
+        computeCutouts(true);
+    }
+
+    void detachHighlights() {
+        if (null == mObserver) return;
+
+        if (mObserver.isAlive()) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                mObserver.removeOnGlobalLayoutListener(this);
+            } else {
+                //noinspection deprecation
+                mObserver.removeGlobalOnLayoutListener(this);
+            }
+            mObserver.removeOnScrollChangedListener(this);
+        }
+        mObserver = null;
+
+        if (null != mSpotlightAnimator && mSpotlightAnimator.isStarted()) {
+            mSpotlightAnimator.cancel();
+            mFraction = 1;
+            mShownDirty = true;
+            mPathDirty = true;
         }
     }
 
+    /**
+     * Drops the highlight views and the highlight drawable, so that a pooled
+     * container does not keep the views of the previous activity alive
+     */
+    void release() {
+        detachHighlights();
+        mHighlightViews = null;
+        mHighlightDrawable = null;
+        for (Rect cutout : mCutouts) {
+            cutout.setEmpty();
+        }
+        mShownValid = false;
+    }
+
     @Override
-    public void draw(Canvas canvas) {
-        canvas.save();
-        if (mHighlightViews != null) {
-            Rect highlightRect = new Rect();
-            Rect vRect = new Rect();
-            for(View v: mHighlightViews) {
-                v.getGlobalVisibleRect(vRect);
-                highlightRect.union(vRect);
+    public void onGlobalLayout() {
+        if (computeCutouts(true)) {
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public void onScrollChanged() {
+        if (computeCutouts(true)) {
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    protected void onBoundsChange(final Rect bounds) {
+        super.onBoundsChange(bounds);
+        mShownDirty = true;
+        mPathDirty = true;
+    }
+
+    /**
+     * @param animate true to animate the spotlights to the new cutouts, never from a draw pass
+     * @return true if the cutouts changed
+     */
+    private boolean computeCutouts(boolean animate) {
+        mCutoutsDirty = false;
+        if (null == mHighlightViews) return false;
+
+        boolean changed = false;
+        for (int i = 0; i < mCutouts.length; i++) {
+            final Rect cutout = mCutouts[i];
+            final int left = cutout.left;
+            final int top = cutout.top;
+            final int right = cutout.right;
+            final int bottom = cutout.bottom;
+
+            if (!mHighlightViews.get(i).getGlobalVisibleRect(cutout)) {
+                cutout.setEmpty();
+            }
+            changed |= left != cutout.left || top != cutout.top || right != cutout.right || bottom != cutout.bottom;
+        }
+
+        if (changed || !mShownValid) {
+            mShownDirty = true;
+            mPathDirty = true;
+            if (animate && isSpotlight()) {
+                startSpotlight();
+            } else if (null == mSpotlightAnimator || !mSpotlightAnimator.isStarted()) {
+                mFraction = 1;
             }
+            return true;
+        }
+        return false;
+    }
 
-            if (mHighlightDrawable != null) {
-                mHighlightDrawable.setBounds(highlightRect);
+    private boolean isSpotlight() {
+        return mShape != TooltipManager.HighlightShape.RECTANGLE;
+    }
+
+    /**
+     * Animates the spotlights from the currently displayed geometry to the new cutouts.
+     * The first time they open from the center of each cutout.
+     */
+    private void startSpotlight() {
+        for (int i = 0; i < mCutouts.length; i++) {
+            final int j = i * 4;
+            if (mShownValid) {
+                System.arraycopy(mShown, j, mFrom, j, 4);
+            } else {
+                final Rect cutout = mCutouts[i];
+                mFrom[j] = mFrom[j + 2] = cutout.exactCenterX();
+                mFrom[j + 1] = mFrom[j + 3] = cutout.exactCenterY();
+            }
+        }
+
+        if (null == mSpotlightAnimator) {
+            mSpotlightAnimator = ValueAnimator.ofFloat(0, 1);
+            mSpotlightAnimator.setDuration(SPOTLIGHT_DURATION);
+            mSpotlightAnimator.addUpdateListener(this);
+        } else {
+            mSpotlightAnimator.cancel();
+        }
+        mFraction = 0;
+        mSpotlightAnimator.start();
+    }
+
+    @Override
+    public void onAnimationUpdate(final ValueAnimator animation) {
+        mFraction = (Float) animation.getAnimatedValue();
+        mShownDirty = true;
+        invalidateSelf();
+    }
+
+    /**
+     * Computes the displayed geometry of the cutouts at the current animation fraction,
+     * and their envelope. Only arithmetic, no path is built here.
+     */
+    private void updateShown() {
+        mShownDirty = false;
+
+        final float fraction = isSpotlight() ? mFraction : 1;
+        float envelopeLeft = Float.MAX_VALUE;
+        float envelopeTop = Float.MAX_VALUE;
+        float envelopeRight = -Float.MAX_VALUE;
+        float envelopeBottom = -Float.MAX_VALUE;
+        boolean hasCutouts = false;
+
+        for (int i = 0; i < mCutouts.length; i++) {
+            final Rect cutout = mCutouts[i];
+            final int j = i * 4;
+
+            if (cutout.isEmpty()) {
+                // not visible, nothing to cut out nor to animate from
+                mShown[j] = mShown[j + 2] = 0;
+                mShown[j + 1] = mShown[j + 3] = 0;
+                continue;
+            }
+
+            float left = cutout.left;
+            float top = cutout.top;
+            float right = cutout.right;
+            float bottom = cutout.bottom;
+
+            if (fraction < 1) {
+                left = mFrom[j] + (left - mFrom[j]) * fraction;
+                top = mFrom[j + 1] + (top - mFrom[j + 1]) * fraction;
+                right = mFrom[j + 2] + (right - mFrom[j + 2]) * fraction;
+                bottom = mFrom[j + 3] + (bottom - mFrom[j + 3]) * fraction;
+            }
+
+            mShown[j] = left;
+            mShown[j + 1] = top;
+            mShown[j + 2] = right;
+            mShown[j + 3] = bottom;
+
+            if (right <= left || bottom <= top) continue;
+            hasCutouts = true;
+
+            if (mShape == TooltipManager.HighlightShape.CIRCLE) {
+                final float radius = getRadius(j);
+                final float centerX = (left + right) / 2;
+                final float centerY = (top + bottom) / 2;
+                left = centerX - radius;
+                top = centerY - radius;
+                right = centerX + radius;
+                bottom = centerY + radius;
+            }
+            envelopeLeft = Math.min(envelopeLeft, left);
+            envelopeTop = Math.min(envelopeTop, top);
+            envelopeRight = Math.max(envelopeRight, right);
+            envelopeBottom = Math.max(envelopeBottom, bottom);
+        }
+        mShownValid = true;
+
+        if (hasCutouts) {
+            mEnvelope.set(
+                    (int) Math.floor(envelopeLeft), (int) Math.floor(envelopeTop), (int) Math.ceil(envelopeRight),
+                    (int) Math.ceil(envelopeBottom));
+            hasCutouts = mEnvelope.intersect(getBounds());
+        }
+        mHasCutouts = hasCutouts;
+    }
+
+    /**
+     * @param j index of the cutout in {@link #mShown}
+     * @return radius of the circle circumscribing the displayed cutout
+     */
+    private float getRadius(int j) {
+        final float width = mShown[j + 2] - mShown[j];
+        final float height = mShown[j + 3] - mShown[j + 1];
+        return (float) Math.sqrt(width * width + height * height) / 2;
+    }
+
+    /**
+     * KitKat and later only, Path.op is not available before
+     */
+    private void rebuildPath() {
+        mPathDirty = false;
+        mPath.reset();
+        mCutoutPath.reset();
+
+        for (int j = 0; j < mShown.length; j += 4) {
+            final float left = mShown[j];
+            final float top = mShown[j + 1];
+            final float right = mShown[j + 2];
+            final float bottom = mShown[j + 3];
+            if (right <= left || bottom <= top) continue;
+
+            switch (mShape) {
+                case CIRCLE:
+                    mCutoutPath.addCircle((left + right) / 2, (top + bottom) / 2, getRadius(j), Path.Direction.CW);
+                    break;
+
+                case ROUND_RECT:
+                    mTempRect.set(left, top, right, bottom);
+                    mCutoutPath.addRoundRect(mTempRect, mCornerRadius, mCornerRadius, Path.Direction.CW);
+                    break;
+
+                default:
+                    mCutoutPath.addRect(left, top, right, bottom, Path.Direction.CW);
+                    break;
+            }
+        }
+
+        final Rect bounds = getBounds();
+        mPath.addRect(bounds.left, bounds.top, bounds.right, bounds.bottom, Path.Direction.CW);
+        mPath.op(mCutoutPath, Path.Op.DIFFERENCE);
+    }
+
+    /**
+     * Dims the envelope of the cutouts in a layer and clears the shapes out of it, so that
+     * overlapping shapes merge. Plain rects dim the rest of the bounds. Used while the
+     * spotlights animate, so that no path is built nor rasterized again every frame, and
+     * before KitKat, where Path.op is not available.
+     */
+    private void drawCleared(Canvas canvas) {
+        final Rect bounds = getBounds();
+        final Rect envelope = mEnvelope;
+
+        if (envelope.top > bounds.top) {
+            canvas.drawRect(bounds.left, bounds.top, bounds.right, envelope.top, mPaint);
+        }
+        if (envelope.bottom < bounds.bottom) {
+            canvas.drawRect(bounds.left, envelope.bottom, bounds.right, bounds.bottom, mPaint);
+        }
+        if (envelope.left > bounds.left) {
+            canvas.drawRect(bounds.left, envelope.top, envelope.left, envelope.bottom, mPaint);
+        }
+        if (envelope.right < bounds.right) {
+            canvas.drawRect(envelope.right, envelope.top, bounds.right, envelope.bottom, mPaint);
+        }
+
+        final int saveCount;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mTempRect.set(envelope);
+            saveCount = canvas.saveLayer(mTempRect, null);
+        } else {
+            //noinspection deprecation
+            saveCount = canvas.saveLayer(
+                    envelope.left, envelope.top, envelope.right, envelope.bottom, null, Canvas.ALL_SAVE_FLAG);
+        }
+        canvas.drawRect(envelope, mPaint);
+
+        for (int j = 0; j < mShown.length; j += 4) {
+            final float left = mShown[j];
+            final float top = mShown[j + 1];
+            final float right = mShown[j + 2];
+            final float bottom = mShown[j + 3];
+            if (right <= left || bottom <= top) continue;
+
+            switch (mShape) {
+                case CIRCLE:
+                    canvas.drawCircle((left + right) / 2, (top + bottom) / 2, getRadius(j), mClearPaint);
+                    break;
+
+                case ROUND_RECT:
+                    mTempRect.set(left, top, right, bottom);
+                    canvas.drawRoundRect(mTempRect, mCornerRadius, mCornerRadius, mClearPaint);
+                    break;
+
+                default:
+                    canvas.drawRect(left, top, right, bottom, mClearPaint);
+                    break;
+            }
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * @return true if the drawable would not draw anything at full alpha
+     */
+    boolean isTransparent() {
+        return Color.alpha(mBackgroundColor) == 0 && null == mHighlightDrawable;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mAlpha == 0 || isTransparent()) {
+            return;
+        }
+
+        // without listeners there is no way to know when the views moved
+        if (mCutoutsDirty || null == mObserver) {
+            computeCutouts(false);
+        }
+
+        if (mShownDirty) {
+            updateShown();
+        }
+
+        if (mHighlightDrawable != null) {
+            for (Rect cutout : mCutouts) {
+                if (cutout.isEmpty()) continue;
+                mHighlightDrawable.setBounds(cutout);
+                mHighlightDrawable.setAlpha(mAlpha);
                 mHighlightDrawable.draw(canvas);
             }
+        }
 
-            canvas.clipRect(highlightRect, Region.Op.DIFFERENCE);
+        mPaint.setColor(modulateAlpha(mBackgroundColor, mAlpha));
+        if (!mHasCutouts) {
+            canvas.drawRect(getBounds(), mPaint);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && (!isSpotlight() || mFraction >= 1)) {
+            // still: a single fill of everything but the cutouts, no clipping involved
+            if (mPathDirty) {
+                rebuildPath();
+            }
+            canvas.drawPath(mPath, mPaint);
+        } else {
+            drawCleared(canvas);
         }
+    }
 
-        canvas.drawColor(mBackgroundColor);
-        canvas.restore();
+    private static int modulateAlpha(int color, int alpha) {
+        if (alpha == 255) return color;
+        return (color & 0x00ffffff) | ((Color.alpha(color) * alpha / 255) << 24);
     }
 
     @Override
     public void setAlpha(int alpha) {
+        if (mAlpha != alpha) {
+            mAlpha = alpha;
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return mAlpha;
     }
 
     @Override
@@ -59,6 +551,6 @@ public class TooltipBackgroundDrawable extends Drawable {
 
     @Override
     public int getOpacity() {
-        return 0;
+        return mAlpha == 0 || isTransparent() ? PixelFormat.TRANSPARENT : PixelFormat.TRANSLUCENT;
     }
 }
@@ -0,0 +1,185 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * Thread safe mailbox of tooltip commands.<br />
+ * Commands can be enqueued from any thread and are applied on the main thread,
+ * all together on the next frame. Commands for the same tooltip id are merged, so that
+ * only the last text, a single update and the final show/hide state are applied.<br />
+ * Once {@link #close()}d the queue drops everything, commands enqueued later included.
+ */
+final class TooltipCommandQueue implements FrameHandler.Callback {
+    private static final String TAG = "TooltipCommandQueue";
+
+    private static final int HIDE = 1;
+    private static final int SHOW = 1 << 1;
+    private static final int TEXT = 1 << 2;
+    private static final int UPDATE = 1 << 3;
+
+    static interface Target {
+        void show(TooltipManager.Builder builder);
+
+        void hide(int id);
+
+        void setText(int id, CharSequence text);
+
+        void update(int id);
+    }
+
+    private static final class Command {
+        final int id;
+        int flags;
+        TooltipManager.Builder builder;
+        CharSequence text;
+
+        Command(final int id) {
+            this.id = id;
+        }
+    }
+
+    private final Target mTarget;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final FrameHandler mFrameHandler = new FrameHandler(this);
+
+    private final Object mLock = new Object();
+    private SparseArray<Command> mPending = new SparseArray<Command>();
+    private ArrayList<Command> mOrder = new ArrayList<Command>();
+    private SparseArray<Command> mSparePending = new SparseArray<Command>();
+    private ArrayList<Command> mSpareOrder = new ArrayList<Command>();
+    private boolean mScheduled;
+    private boolean mClosed;
+
+    private final Runnable mScheduleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFrameHandler.schedule();
+        }
+    };
+
+    TooltipCommandQueue(final Target target) {
+        mTarget = target;
+    }
+
+    void show(TooltipManager.Builder builder) {
+        synchronized (mLock) {
+            if (mClosed) return;
+            Command command = obtain(builder.id);
+            // a show replaces anything requested before, except a previous hide
+            command.flags = (command.flags & HIDE) | SHOW;
+            command.builder = builder;
+            command.text = null;
+        }
+        scheduleDrain();
+    }
+
+    void hide(int id) {
+        synchronized (mLock) {
+            if (mClosed) return;
+            Command command = obtain(id);
+            command.flags = HIDE;
+            command.builder = null;
+            command.text = null;
+        }
+        scheduleDrain();
+    }
+
+    void setText(int id, CharSequence text) {
+        synchronized (mLock) {
+            if (mClosed) return;
+            Command command = obtain(id);
+            command.flags |= TEXT;
+            command.text = text;
+        }
+        scheduleDrain();
+    }
+
+    void update(int id) {
+        synchronized (mLock) {
+            if (mClosed) return;
+            obtain(id).flags |= UPDATE;
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Drops the pending commands and every command enqueued from now on
+     */
+    void close() {
+        synchronized (mLock) {
+            mClosed = true;
+            mPending.clear();
+            mOrder.clear();
+        }
+        mHandler.removeCallbacks(mScheduleRunnable);
+        mFrameHandler.cancel();
+    }
+
+    private Command obtain(int id) {
+        Command command = mPending.get(id);
+        if (null == command) {
+            command = new Command(id);
+            mPending.put(id, command);
+            mOrder.add(command);
+        }
+        return command;
+    }
+
+    private void scheduleDrain() {
+        synchronized (mLock) {
+            if (mScheduled) return;
+            mScheduled = true;
+        }
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            mFrameHandler.schedule();
+        } else {
+            mHandler.post(mScheduleRunnable);
+        }
+    }
+
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        final ArrayList<Command> commands;
+
+        synchronized (mLock) {
+            mScheduled = false;
+            if (mClosed) return;
+            commands = mOrder;
+            mOrder = mSpareOrder;
+            mSpareOrder = commands;
+
+            SparseArray<Command> pending = mPending;
+            mPending = mSparePending;
+            mSparePending = pending;
+            pending.clear();
+        }
+
+        if (DBG) Log.i(TAG, "drain: " + commands.size() + " commands");
+
+        final int size = commands.size();
+        for (int i = 0; i < size; i++) {
+            Command command = commands.get(i);
+            if ((command.flags & HIDE) != 0) {
+                mTarget.hide(command.id);
+            }
+            if ((command.flags & SHOW) != 0) {
+                mTarget.show(command.builder);
+            }
+            if ((command.flags & TEXT) != 0) {
+                mTarget.setText(command.id, command.text);
+            }
+            if ((command.flags & UPDATE) != 0) {
+                mTarget.update(command.id);
+            }
+        }
+        commands.clear();
+    }
+}
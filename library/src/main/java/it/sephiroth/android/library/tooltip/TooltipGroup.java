@@ -0,0 +1,105 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * A set of tooltips drawn on top of a single shared background layer.
+ * The background cuts out the union of the highlight views of all the members,
+ * so the screen is dimmed once regardless of the number of tooltips in the group.
+ */
+final class TooltipGroup {
+    private static final String TAG = "TooltipGroup";
+
+    private final int groupId;
+    private final long animationDuration;
+    private final View mBackgroundView;
+    private final TooltipBackgroundDrawable mBackgroundDrawable;
+    private final BackgroundFade mBackgroundFade;
+    // by instance: once hidden, a member id can be shown again outside of the group
+    private final List<TooltipView> mMembers = new ArrayList<TooltipView>();
+
+    TooltipGroup(
+            Context context, int groupId, int backgroundColorResId, List<View> highlightViews, int highlightDrawableResId,
+            long animationDuration) {
+        this.groupId = groupId;
+        this.animationDuration = animationDuration;
+
+        mBackgroundDrawable = new TooltipBackgroundDrawable(context, backgroundColorResId, highlightViews, highlightDrawableResId);
+        mBackgroundDrawable.setAlpha(0);
+        mBackgroundFade = new BackgroundFade(mBackgroundDrawable);
+
+        mBackgroundView = new View(context);
+        if (mBackgroundDrawable.isTransparent()) {
+            // nothing to draw, the view only keeps the group stacking order
+            mBackgroundView.setWillNotDraw(true);
+        } else if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            //noinspection deprecation
+            mBackgroundView.setBackgroundDrawable(mBackgroundDrawable);
+        } else {
+            mBackgroundView.setBackground(mBackgroundDrawable);
+        }
+    }
+
+    void setHighlightShape(TooltipManager.HighlightShape shape, int cornerRadius) {
+        mBackgroundDrawable.setHighlightShape(shape, cornerRadius);
+    }
+
+    int getGroupId() {
+        return groupId;
+    }
+
+    void addMember(TooltipView member) {
+        mMembers.add(member);
+    }
+
+    /**
+     * @return true if the group has no more members
+     */
+    boolean removeMember(TooltipView member) {
+        mMembers.remove(member);
+        return mMembers.isEmpty();
+    }
+
+    TooltipView[] getMembers() {
+        return mMembers.toArray(new TooltipView[mMembers.size()]);
+    }
+
+    void attach(ViewGroup parent) {
+        if (null == mBackgroundView.getParent()) {
+            parent.addView(
+                    mBackgroundView,
+                    new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            mBackgroundDrawable.attachHighlights();
+        }
+    }
+
+    void show() {
+        if (DBG) Log.i(TAG, "show: " + groupId);
+        mBackgroundFade.fadeIn(animationDuration);
+    }
+
+    void hide() {
+        if (DBG) Log.i(TAG, "hide: " + groupId);
+        mBackgroundFade.fadeOut(animationDuration);
+    }
+
+    void detach() {
+        if (DBG) Log.i(TAG, "detach: " + groupId);
+        mBackgroundFade.jumpTo(false);
+        mBackgroundDrawable.detachHighlights();
+        ViewParent parent = mBackgroundView.getParent();
+        if (null != parent) {
+            ((ViewGroup) parent).removeView(mBackgroundView);
+        }
+    }
+}
@@ -1,17 +1,26 @@
 package it.sephiroth.android.library.tooltip;
 
 import android.app.Activity;
+import android.app.Application;
 import android.content.res.Resources;
 import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.AdapterView;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.WeakHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 public class TooltipManager {
@@ -24,19 +33,151 @@ public class TooltipManager {
         void onTooltipDetached(int id);
     }
 
-    private static ConcurrentHashMap<Integer, TooltipManager> instances = new ConcurrentHashMap<Integer, TooltipManager>();
+    /**
+     * Can be implemented by an {@link OnTooltipAttachedStateChange} listener to receive a
+     * single notification when many tooltips are removed at once by {@link #removeAll()},
+     * instead of one {@link OnTooltipAttachedStateChange#onTooltipDetached(int)} per tooltip.
+     */
+    public static interface OnTooltipsDetached {
+        void onTooltipsDetached(int[] ids);
+    }
+
+    /**
+     * Managers are kept until their activity is destroyed, when {@link #sLifecycleCallbacks}
+     * removes and destroys them. Their views hold the activity context, so weak keys
+     * would never be cleared: the lifecycle callback is the only way out.
+     * Activities which will never get that callback, see {@link #getInstance(Activity)},
+     * are never added.
+     */
+    private static final HashMap<Activity, TooltipManager> instances = new HashMap<Activity, TooltipManager>();
+
+    private static final WeakHashMap<Application, Boolean> sRegisteredApplications = new WeakHashMap<Application, Boolean>();
+
+    private static final Application.ActivityLifecycleCallbacks sLifecycleCallbacks = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(final Activity activity, final Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(final Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(final Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(final Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(final Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(final Activity activity, final Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(final Activity activity) {
+            removeInstance(activity);
+        }
+    };
 
     private final List<OnTooltipAttachedStateChange> mTooltipAttachStatusListeners = new CopyOnWriteArrayList<OnTooltipAttachedStateChange>();
 
-    final HashMap<Integer, TooltipView> mTooltips = new HashMap<Integer, TooltipView>();
-    final Object lock = new Object();
-    final Activity mActivity;
+    final TooltipRegistry mTooltips = new TooltipRegistry();
+    private final Activity mActivity;
+    private final TooltipPool mPool = new TooltipPool();
+    private final SparseArray<TooltipGroup> mGroups = new SparseArray<TooltipGroup>();
+    private boolean mSharedOverlayEnabled;
+    private final AnchorTracker mAnchorTracker = new AnchorTracker();
+    private final TooltipObstacles mObstacles = new TooltipObstacles();
+    private final PlacementCache mPlacementCache = new PlacementCache();
+    private final TimerWheel mTimers = new TimerWheel();
+    private TooltipMetrics mMetrics;
+    private TooltipMetricsHud mMetricsHud;
+
+    private final TooltipMetrics mMetricsDispatcher = new TooltipMetrics() {
+        @Override
+        public void onInflate(final int id, final long nanos) {
+            if (null != mMetrics) mMetrics.onInflate(id, nanos);
+            if (null != mMetricsHud) mMetricsHud.onInflate(id, nanos);
+        }
+
+        @Override
+        public void onMeasureLayout(final int id, final long measureNanos, final long layoutNanos) {
+            if (null != mMetrics) mMetrics.onMeasureLayout(id, measureNanos, layoutNanos);
+            if (null != mMetricsHud) mMetricsHud.onMeasureLayout(id, measureNanos, layoutNanos);
+        }
+
+        @Override
+        public void onPlacement(final int id, final int attempts, final boolean success) {
+            if (null != mMetrics) mMetrics.onPlacement(id, attempts, success);
+            if (null != mMetricsHud) mMetricsHud.onPlacement(id, attempts, success);
+        }
+
+        @Override
+        public void onAnimation(final int id, final boolean in, final long durationMs, final int droppedFrames) {
+            if (null != mMetrics) mMetrics.onAnimation(id, in, durationMs, droppedFrames);
+            if (null != mMetricsHud) mMetricsHud.onAnimation(id, in, durationMs, droppedFrames);
+        }
+
+        @Override
+        public void onShown(final int id, final long elapsedMs) {
+            if (null != mMetrics) mMetrics.onShown(id, elapsedMs);
+            if (null != mMetricsHud) mMetricsHud.onShown(id, elapsedMs);
+        }
+    };
+
+    private final TooltipCommandQueue mCommands = new TooltipCommandQueue(new TooltipCommandQueue.Target() {
+        @Override
+        public void show(final Builder builder) {
+            TooltipManager.this.show(builder, true);
+        }
+
+        @Override
+        public void hide(final int id) {
+            TooltipManager.this.hide(id);
+        }
+
+        @Override
+        public void setText(final int id, final CharSequence text) {
+            TooltipManager.this.setText(id, text);
+        }
+
+        @Override
+        public void update(final int id) {
+            TooltipManager.this.update(id);
+        }
+    });
+
+    private final TooltipScheduler mScheduler = new TooltipScheduler(new TooltipScheduler.Host() {
+        @Override
+        public int getVisibleCount() {
+            return mTooltips.size();
+        }
+
+        @Override
+        public TooltipView attach(final Builder builder, final boolean immediate) {
+            return attachTooltip(builder, immediate);
+        }
+    });
+    private TooltipOverlay mOverlay;
+    private TooltipTouchRouter mTouchRouter;
+    // set once the activity is destroyed, nothing can be shown anymore
+    private boolean mDestroyed;
 
     private TooltipView.OnCloseListener mCloseListener = new TooltipView.OnCloseListener() {
         @Override
         public void onClose(final TooltipView layout) {
             if (DBG) Log.i(TAG, "onClose: " + layout.getTooltipId());
-            hide(layout.getTooltipId());
+            final TooltipGroup group = layout.getGroup();
+            if (null != group) {
+                hideGroup(group.getGroupId());
+            } else {
+                hide(layout.getTooltipId());
+            }
         }
     };
 
@@ -48,6 +189,8 @@ public class TooltipManager {
             layout.removeFromParent();
             printStats();
             fireOnTooltipDetached(id);
+            onTooltipRemoved(layout);
+            mPool.releaseContainer(layout);
         }
 
         @Override
@@ -67,6 +210,110 @@ public class TooltipManager {
         mActivity = activity;
     }
 
+    Activity getActivity() {
+        return mActivity;
+    }
+
+    /**
+     * @return the pool used to recycle the tooltip views of this manager
+     */
+    public TooltipPool getPool() {
+        return mPool;
+    }
+
+    /**
+     * @return the cache of the solved tooltip placements, see {@link PlacementCache#getHitCount()}
+     */
+    public PlacementCache getPlacementCache() {
+        return mPlacementCache;
+    }
+
+    /**
+     * When enabled all the tooltips of this manager are hosted by a single overlay
+     * container attached to the decor view, instead of one full screen view each.
+     * Only affects the tooltips shown after this call.
+     */
+    public void setSharedOverlayEnabled(boolean enabled) {
+        mSharedOverlayEnabled = enabled;
+    }
+
+    public boolean isSharedOverlayEnabled() {
+        return mSharedOverlayEnabled;
+    }
+
+    /**
+     * Max number of tooltips attached at the same time. Further tooltips are queued by
+     * {@link Builder#priority(int)} and shown as soon as the others are removed.
+     *
+     * @param maxVisible max number of visible tooltips, 0 for no limit
+     */
+    public void setMaxVisible(int maxVisible) {
+        mScheduler.setMaxVisible(maxVisible);
+    }
+
+    /**
+     * Time per frame that can be spent attaching and inflating new tooltips. Once the
+     * budget is exhausted the remaining tooltips are attached on the next frames.
+     *
+     * @param ms the budget in milliseconds, 0 for no limit
+     */
+    public void setFrameBudget(long ms) {
+        mScheduler.setFrameBudget(ms);
+    }
+
+    /**
+     * Thread safe version of {@link #hide(int)}. The command is applied on the main thread
+     * on the next frame, merged with the other commands posted for the same tooltip.
+     */
+    public void postHide(int id) {
+        mCommands.hide(id);
+    }
+
+    /**
+     * Thread safe version of {@link #setText(int, CharSequence)}, only the last text
+     * posted before the next frame is applied.
+     */
+    public void postSetText(int id, CharSequence text) {
+        mCommands.setText(id, text);
+    }
+
+    /**
+     * Thread safe version of {@link #update(int)}, multiple updates posted before the
+     * next frame are applied once.
+     */
+    public void postUpdate(int id) {
+        mCommands.update(id);
+    }
+
+    /**
+     * Sets a listener receiving the performance metrics of every tooltip shown after this call.
+     *
+     * @param metrics the listener, or null to disable the metrics
+     */
+    public void setMetrics(TooltipMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Shows a small debug overlay with the metrics aggregated over all the tooltips
+     * shown after this call.
+     */
+    public void setMetricsHudEnabled(boolean enabled) {
+        final Activity activity = getActivity();
+
+        if (enabled && null == mMetricsHud) {
+            mMetricsHud = new TooltipMetricsHud(activity);
+            mMetricsHud.attach((ViewGroup) activity.getWindow().getDecorView());
+        } else if (!enabled && null != mMetricsHud) {
+            mMetricsHud.detach();
+            mMetricsHud = null;
+        }
+    }
+
+    private TooltipMetrics getMetrics() {
+        return null != mMetrics || null != mMetricsHud ? mMetricsDispatcher : null;
+    }
+
     public void addOnTooltipAttachedStateChange(OnTooltipAttachedStateChange listener) {
         if (!mTooltipAttachStatusListeners.contains(listener)) {
             mTooltipAttachStatusListeners.add(listener);
@@ -87,6 +334,20 @@ public class TooltipManager {
         }
     }
 
+    private void fireOnTooltipsDetached(int[] ids) {
+        if (mTooltipAttachStatusListeners.size() > 0) {
+            for (OnTooltipAttachedStateChange listener : mTooltipAttachStatusListeners) {
+                if (listener instanceof OnTooltipsDetached) {
+                    ((OnTooltipsDetached) listener).onTooltipsDetached(ids);
+                } else if (listener != null) {
+                    for (int id : ids) {
+                        listener.onTooltipDetached(id);
+                    }
+                }
+            }
+        }
+    }
+
     private void fireOnTooltipAttached(int id) {
         if (mTooltipAttachStatusListeners.size() > 0) {
             for (OnTooltipAttachedStateChange listener : mTooltipAttachStatusListeners) {
@@ -104,29 +365,183 @@ public class TooltipManager {
     private boolean show(Builder builder, boolean immediate) {
         if (DBG) Log.i(TAG, "show");
 
-        synchronized (lock) {
-            if (mTooltips.containsKey(builder.id)) {
-                Log.w(TAG, "A Tooltip with the same id was walready specified");
-                return false;
-            }
+        if (active(builder.id)) {
+            Log.w(TAG, "A Tooltip with the same id was walready specified");
+            return false;
+        }
 
-            TooltipView layout = new TooltipView(mActivity, builder);
-            layout.setOnCloseListener(mCloseListener);
-            layout.setOnToolTipListener(mTooltipListener);
-            mTooltips.put(builder.id, layout);
-            showInternal(layout, immediate);
+        builder.requestTime = SystemClock.uptimeMillis();
+        return mScheduler.schedule(builder, immediate);
+    }
+
+    private TooltipView attachTooltip(Builder builder, boolean immediate) {
+        if (DBG) Log.i(TAG, "attachTooltip: " + builder.id);
+
+        final Activity activity = getActivity();
+        if (activity.isFinishing() || mDestroyed) {
+            Log.w(TAG, "Activity is gone, cannot show the tooltip");
+            return null;
+        }
+
+        TooltipView layout = mPool.acquireContainer(activity, builder);
+        layout.setPool(mPool);
+        layout.setObstacles(mObstacles);
+        layout.setTimers(mTimers);
+        layout.setPlacementCache(mPlacementCache);
+        layout.setMetrics(getMetrics());
+        layout.setOnCloseListener(mCloseListener);
+        layout.setOnToolTipListener(mTooltipListener);
+        if (!mTooltips.put(builder.id, layout)) {
+            Log.w(TAG, "A Tooltip with the same id was walready specified");
+            mPool.releaseContainer(layout);
+            return null;
+        }
+        mPlacementCache.setTooltipCount(mTooltips.size());
+        if (immediate && builder.showDelay > 0 && !mPool.hasContentView(builder.textResId)) {
+            // inflate the content in background while the show delay runs
+            layout.prepareContent();
+        }
+        showInternal(layout, immediate);
+        if (layout.isTrackingAnchor()) {
+            mAnchorTracker.add(layout, activity.getWindow().getDecorView());
         }
         printStats();
+        return layout;
+    }
+
+    /**
+     * Shows all the given tooltips under a single shared background layer, with the
+     * union of their highlight views cut out. The per tooltip backgrounds are ignored.
+     * When one of the tooltips is closed by its {@link ClosePolicy} the whole group is dismissed.
+     *
+     * @param groupId              unique id of the group
+     * @param backgroundColorResId color of the shared background
+     * @param builders             the tooltips of the group, created with {@link #create(int)}
+     * @return false if no tooltip of the group could be shown
+     */
+    public boolean showGroup(int groupId, int backgroundColorResId, Builder... builders) {
+        if (DBG) Log.i(TAG, "showGroup: " + groupId);
+
+        if (null != mGroups.get(groupId)) {
+            Log.w(TAG, "A Group with the same id was already specified");
+            return false;
+        }
+
+        final Activity activity = getActivity();
+        if (builders.length == 0) {
+            return false;
+        }
+
+        List<View> highlightViews = new ArrayList<View>();
+        int highlightDrawableResId = 0;
+        Builder highlightShape = null;
+        long animationDuration = 0;
+
+        for (Builder builder : builders) {
+            builder.validate();
+            if (null != builder.highlightViews) {
+                highlightViews.addAll(builder.highlightViews);
+            }
+            if (highlightDrawableResId == 0) {
+                highlightDrawableResId = builder.highlightDrawableResId;
+            }
+            if (null == highlightShape && builder.highlightShape != HighlightShape.RECTANGLE) {
+                highlightShape = builder;
+            }
+            animationDuration = Math.max(animationDuration, builder.animationDuration);
+        }
+
+        TooltipGroup group = new TooltipGroup(
+                activity, groupId, backgroundColorResId, highlightViews.isEmpty() ? null : highlightViews, highlightDrawableResId,
+                animationDuration);
+        if (null != highlightShape) {
+            group.setHighlightShape(highlightShape.highlightShape, highlightShape.highlightCornerRadius);
+        }
+
+        final ViewGroup parent = getTooltipsParent(activity);
+        if (null == parent) {
+            return false;
+        }
+        group.attach(parent);
+        mGroups.put(groupId, group);
+
+        for (Builder builder : builders) {
+            builder.group = group;
+            builder.requestTime = SystemClock.uptimeMillis();
+            final TooltipView member = active(builder.id) ? null : attachTooltip(builder, true);
+            if (null != member) {
+                group.addMember(member);
+            } else {
+                builder.group = null;
+            }
+        }
+
+        if (group.getMembers().length == 0) {
+            mGroups.remove(groupId);
+            group.detach();
+            return false;
+        }
+
+        group.show();
         return true;
     }
 
+    /**
+     * Hides all the tooltips of the given group together with their shared background.
+     */
+    public void hideGroup(int groupId) {
+        if (DBG) Log.i(TAG, "hideGroup: " + groupId);
+
+        final TooltipGroup group = mGroups.get(groupId);
+        if (null != group) {
+            group.hide();
+            for (TooltipView member : group.getMembers()) {
+                // the id may already belong to a newer tooltip
+                if (mTooltips.get(member.getTooltipId()) == member) {
+                    hide(member.getTooltipId());
+                }
+            }
+        }
+    }
+
+    public boolean activeGroup(int groupId) {
+        return null != mGroups.get(groupId);
+    }
+
+    private void onTooltipRemoved(TooltipView layout) {
+        mAnchorTracker.remove(layout);
+        mObstacles.removeBubble(layout);
+        if (null != mTouchRouter) {
+            mTouchRouter.remove(layout);
+        }
+
+        final TooltipGroup group = layout.getGroup();
+        if (null != group && group.removeMember(layout)) {
+            if (mGroups.get(group.getGroupId()) == group) {
+                mGroups.remove(group.getGroupId());
+            }
+            group.detach();
+        }
+
+        mScheduler.onTooltipRemoved();
+
+        if (null != mOverlay && mOverlay.getChildCount() == 0) {
+            ViewParent parent = mOverlay.getParent();
+            if (null != parent) {
+                if (DBG) Log.v(TAG, "detach overlay");
+                ((ViewGroup) parent).removeView(mOverlay);
+            }
+        }
+    }
+
     public void hide(int id) {
         if (DBG) Log.i(TAG, "hide: " + id);
 
-        final TooltipView layout;
-        synchronized (lock) {
-            layout = mTooltips.remove(id);
+        if (mScheduler.remove(id)) {
+            return;
         }
+
+        final TooltipView layout = mTooltips.remove(id);
         if (null != layout) {
             layout.setOnCloseListener(null);
             layout.hide(true);
@@ -135,16 +550,11 @@ public class TooltipManager {
     }
 
     public TooltipView get(int id) {
-        synchronized (lock) {
-            return mTooltips.get(id);
-        }
+        return mTooltips.get(id);
     }
 
     public void update(int id) {
-        final TooltipView layout;
-        synchronized (lock) {
-            layout = mTooltips.get(id);
-        }
+        final TooltipView layout = mTooltips.get(id);
         if (null != layout) {
             if (DBG) Log.i(TAG, "update: " + id);
             layout.layout(layout.getLeft(), layout.getTop(), layout.getRight(), layout.getBottom());
@@ -153,33 +563,131 @@ public class TooltipManager {
     }
 
     public boolean active(int id) {
-        synchronized (lock) {
-            return mTooltips.containsKey(id);
-        }
+        return mTooltips.contains(id) || mScheduler.contains(id);
     }
 
     public void remove(int id) {
         if (DBG) Log.i(TAG, "remove: " + id);
 
-        final TooltipView layout;
-        synchronized (lock) {
-            layout = mTooltips.remove(id);
+        if (mScheduler.remove(id)) {
+            return;
         }
 
+        final TooltipView layout = mTooltips.remove(id);
+
         if (null != layout) {
             layout.setOnCloseListener(null);
             layout.setOnToolTipListener(null);
             layout.removeFromParent();
             fireOnTooltipDetached(id);
+            onTooltipRemoved(layout);
+            mPool.releaseContainer(layout);
         }
         printStats();
     }
 
-    public void setText(int id, final CharSequence text) {
-        TooltipView layout;
-        synchronized (lock) {
-            layout = mTooltips.get(id);
+    /**
+     * Removes all the tooltips at once, queued ones included, without animations.
+     * Timers and animators are cancelled, the views are removed from their parents in a
+     * single pass and the listeners receive one batched detach notification,
+     * see {@link OnTooltipsDetached}.
+     */
+    public void removeAll() {
+        if (DBG) Log.i(TAG, "removeAll");
+
+        mScheduler.clear();
+        mAnchorTracker.clear();
+        mObstacles.clearBubbles();
+        if (null != mTouchRouter) {
+            mTouchRouter.clear();
+        }
+        if (null != mOverlay) {
+            mOverlay.clearBackgrounds();
+        }
+
+        final TooltipView[] layouts = mTooltips.clear();
+        final int size = layouts.length;
+        final int[] ids = new int[size];
+        final ArrayList<ViewGroup> parents = new ArrayList<ViewGroup>(2);
+
+        for (int i = 0; i < size; i++) {
+            final TooltipView layout = layouts[i];
+            ids[i] = layout.getTooltipId();
+            layout.setOnCloseListener(null);
+            layout.setOnToolTipListener(null);
+            layout.cancelPending();
+
+            ViewParent parent = layout.getParent();
+            if (null != parent) {
+                ((ViewGroup) parent).removeViewInLayout(layout);
+                if (!parents.contains(parent)) {
+                    parents.add((ViewGroup) parent);
+                }
+            }
+        }
+
+        for (int i = 0; i < mGroups.size(); i++) {
+            mGroups.valueAt(i).detach();
+        }
+        mGroups.clear();
+
+        if (null != mOverlay && mOverlay.getChildCount() == 0 && null != mOverlay.getParent()) {
+            parents.remove(mOverlay);
+            ((ViewGroup) mOverlay.getParent()).removeView(mOverlay);
+        }
+
+        // a single layout pass for all the removed tooltips
+        for (ViewGroup parent : parents) {
+            parent.requestLayout();
+            parent.invalidate();
+        }
+
+        if (size > 0) {
+            fireOnTooltipsDetached(ids);
+        }
+
+        for (TooltipView layout : layouts) {
+            mPool.releaseContainer(layout);
+        }
+        printStats();
+    }
+
+    /**
+     * Registers an area the tooltips must not cover, e.g. a control that must stay
+     * visible. The active tooltips are placed again avoiding it, falling back to their
+     * regular position only when no gravity is free.
+     *
+     * @param key  unique key of the area, used to move or remove it
+     * @param rect the area, in window coordinates (see {@link View#getGlobalVisibleRect(Rect)})
+     */
+    public void setKeepClearRect(int key, Rect rect) {
+        mObstacles.setKeepClear(key, rect.left, rect.top, rect.right, rect.bottom);
+        solveAll();
+    }
+
+    public void removeKeepClearRect(int key) {
+        mObstacles.removeKeepClear(key);
+        solveAll();
+    }
+
+    public void clearKeepClearRects() {
+        mObstacles.clearKeepClear();
+        solveAll();
+    }
+
+    /**
+     * Places all the active tooltips again, one after the other, each one avoiding
+     * the keep-clear areas and the tooltips already placed
+     */
+    private void solveAll() {
+        mObstacles.clearBubbles();
+        for (TooltipView layout : mTooltips.values()) {
+            layout.requestPlacement();
         }
+    }
+
+    public void setText(int id, final CharSequence text) {
+        final TooltipView layout = mTooltips.get(id);
         if (null != layout) {
             layout.setText(text);
         }
@@ -193,31 +701,62 @@ public class TooltipManager {
 
     private void destroy() {
         if (DBG) Log.i(TAG, "destroy");
-        synchronized (lock) {
-            for (int id : mTooltips.keySet()) {
-                remove(id);
-            }
-        }
+        mDestroyed = true;
+        mCommands.close();
+        setMetricsHudEnabled(false);
+        removeAll();
         mTooltipAttachStatusListeners.clear();
+        mPool.clear();
+        mPlacementCache.clear();
+        mTimers.clear();
         printStats();
     }
 
+    /**
+     * @return the view the tooltips must be added to: the decor view,
+     * or the shared overlay if {@link #isSharedOverlayEnabled()}
+     */
+    private ViewGroup getTooltipsParent(Activity activity) {
+        ViewGroup decor = (ViewGroup) activity.getWindow().getDecorView();
+        if (null == decor || !mSharedOverlayEnabled) {
+            return decor;
+        }
+
+        if (null == mOverlay) {
+            mOverlay = new TooltipOverlay(activity);
+        }
+
+        if (null == mOverlay.getParent()) {
+            if (DBG) Log.v(TAG, "attach overlay");
+            ViewGroup.LayoutParams params = new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+            decor.addView(mOverlay, params);
+        }
+        return mOverlay;
+    }
+
     private void showInternal(TooltipView layout, boolean immediate) {
-        if (null != mActivity) {
-            ViewGroup decor = (ViewGroup) mActivity.getWindow().getDecorView();
-            if (null == decor) return;
-            if (layout.getParent() == null) {
-                if (DBG) Log.v(TAG, "attach to mToolTipLayout parent");
-                ViewGroup.LayoutParams params = new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
-                decor.addView(layout, params);
+        final Activity activity = getActivity();
+        ViewGroup parent = getTooltipsParent(activity);
+        if (null == parent) return;
+        if (layout.getParent() == null) {
+            if (DBG) Log.v(TAG, "attach to mToolTipLayout parent");
+            ViewGroup.LayoutParams params = new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+            parent.addView(layout, params);
+            if (parent == mOverlay) {
+                layout.setSharedBackground(mOverlay);
             }
+        }
 
-            if (immediate) {
-                layout.show();
-            }
+        if (null == mTouchRouter) {
+            mTouchRouter = new TooltipTouchRouter(activity, mObstacles);
+        }
+        mTouchRouter.add(layout, (ViewGroup) activity.getWindow().getDecorView());
 
-            fireOnTooltipAttached(layout.getTooltipId());
+        if (immediate) {
+            layout.show();
         }
+
+        fireOnTooltipAttached(layout.getTooltipId());
     }
 
     public static final class Builder {
@@ -235,6 +774,7 @@ public class TooltipManager {
         long showDelay = 0;
         boolean hideArrow;
         int maxWidth = -1;
+        float elevation = -1;
         int defStyleRes = R.style.ToolTipLayoutDefaultStyle;
         int defStyleAttr = R.attr.ttlm_defaultStyle;
         long activateDelay = 0;
@@ -247,6 +787,13 @@ public class TooltipManager {
         List<View> highlightViews;
         boolean centerHorizontally = false;
         int highlightDrawableResId = 0;
+        HighlightShape highlightShape = HighlightShape.RECTANGLE;
+        int highlightCornerRadius;
+        TooltipGroup group;
+        int priority = 0;
+        long requestTime;
+        boolean trackAnchor;
+        AdapterAnchor adapterAnchor;
 
         Builder(final TooltipManager manager, int id) {
             this.manager = new WeakReference<TooltipManager>(manager);
@@ -306,9 +853,7 @@ public class TooltipManager {
         public Builder text(int resid) {
             TooltipManager tipManager = manager.get();
             if (null != tipManager) {
-                if (null != tipManager.mActivity) {
-                    return text(tipManager.mActivity.getResources().getString(resid));
-                }
+                return text(tipManager.getActivity().getResources().getString(resid));
             }
             return this;
         }
@@ -325,6 +870,7 @@ public class TooltipManager {
 
         public Builder anchor(View view, Gravity gravity) {
             this.point = null;
+            this.adapterAnchor = null;
             this.view = view;
             this.gravity = gravity;
             return this;
@@ -332,11 +878,47 @@ public class TooltipManager {
 
         public Builder anchor(final Point point, final Gravity gravity) {
             this.view = null;
+            this.adapterAnchor = null;
             this.point = new Point(point);
             this.gravity = gravity;
             return this;
         }
 
+        /**
+         * Anchor the tooltip to the row at the given adapter position. The tooltip follows the row
+         * while the list scrolls and recycles its views, it's hidden while the row is off screen
+         * and shown again when the row comes back.
+         *
+         * @param adapterView the list
+         * @param position    adapter position of the row
+         * @param gravity
+         * @return
+         */
+        public Builder anchor(AdapterView<?> adapterView, int position, Gravity gravity) {
+            this.view = null;
+            this.point = null;
+            this.adapterAnchor = AdapterAnchor.forPosition(adapterView, position);
+            this.gravity = gravity;
+            return this;
+        }
+
+        /**
+         * Like {@link #anchor(AdapterView, int, Gravity)}, but the row is identified by its stable item id,
+         * see {@link android.widget.Adapter#getItemId(int)}.
+         *
+         * @param adapterView the list
+         * @param itemId      item id of the row
+         * @param gravity
+         * @return
+         */
+        public Builder anchorItemId(AdapterView<?> adapterView, long itemId, Gravity gravity) {
+            this.view = null;
+            this.point = null;
+            this.adapterAnchor = AdapterAnchor.forItemId(adapterView, itemId);
+            this.gravity = gravity;
+            return this;
+        }
+
         /**
          * @param show true to show the arrow, false to hide it
          * @return
@@ -346,6 +928,18 @@ public class TooltipManager {
             return this;
         }
 
+        /**
+         * Elevation of the bubble, overrides the ttlm_elevation style attribute.
+         * The shadow is rendered by the platform from Lollipop on, and follows the
+         * bubble outline. Ignored with a custom view.
+         *
+         * @param elevation elevation in pixels
+         */
+        public Builder elevation(float elevation) {
+            this.elevation = elevation;
+            return this;
+        }
+
         public Builder actionBarSize(final int actionBarSize) {
             this.actionbarSize = actionBarSize;
             return this;
@@ -366,6 +960,10 @@ public class TooltipManager {
             return this;
         }
 
+        /**
+         * Delay before the tooltip is shown. Meanwhile the content view is inflated
+         * in background, unless a recycled one is available.
+         */
         public Builder showDelay(long ms) {
             this.showDelay = ms;
             return this;
@@ -379,7 +977,7 @@ public class TooltipManager {
         /**
          * Highlight specific views.
          * The highlighted views will be excluded when drawing the background, instead a custom
-         * drawable can be drawn on top of it to further highlight it. The highlighted area is a union of all visible portions of the given views.
+         * drawable can be drawn on top of it to further highlight it. The visible portion of every view is cut out separately.
          *
          * @param highlightViews
          * @param highlightDrawableResId
@@ -401,6 +999,17 @@ public class TooltipManager {
             return highlightViews(0, highlightViews);
         }
 
+        /**
+         * Shape of the highlighted areas, see {@link #highlightViews(View...)}
+         *
+         * @param cornerRadius corner radius in pixels, used by {@link HighlightShape#ROUND_RECT}
+         */
+        public Builder highlightShape(HighlightShape shape, int cornerRadius) {
+            this.highlightShape = shape;
+            this.highlightCornerRadius = cornerRadius;
+            return this;
+        }
+
         /**
          * Whether to show the tooltip horizontally centered in the screen.
          *
@@ -412,12 +1021,42 @@ public class TooltipManager {
             return this;
         }
 
-        public boolean show() {
-            // verification
+        /**
+         * Make the tooltip follow its anchor view when it moves, without the need to call
+         * {@link TooltipManager#update(int)}. Moves are applied as a translation of the bubble,
+         * the placement is solved again only when the bubble does not fit anymore.
+         * Only applies to tooltips anchored to a view.
+         *
+         * @param track
+         * @return
+         */
+        public Builder trackAnchor(boolean track) {
+            this.trackAnchor = track;
+            return this;
+        }
+
+        /**
+         * Priority used when the tooltip cannot be shown right away and has to be queued,
+         * see {@link TooltipManager#setMaxVisible(int)}. Higher priorities are shown first.
+         *
+         * @param priority
+         * @return
+         */
+        public Builder priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        void validate() {
             if (null == closePolicy) throw new IllegalStateException("ClosePolicy cannot be null");
-            if (null == point && null == view)
+            if (null == point && null == view && null == adapterAnchor)
                 throw new IllegalStateException("Target point or target view must be specified");
             if (gravity == Gravity.CENTER) hideArrow = true;
+        }
+
+        public boolean show() {
+            // verification
+            validate();
 
             TooltipManager tmanager = this.manager.get();
             if (null != tmanager) {
@@ -426,12 +1065,23 @@ public class TooltipManager {
             return false;
         }
 
+        /**
+         * Thread safe version of {@link #show()}: the tooltip is shown on the main thread
+         * on the next frame.
+         */
+        public void post() {
+            // verification
+            validate();
+
+            TooltipManager tmanager = this.manager.get();
+            if (null != tmanager) {
+                tmanager.mCommands.show(this);
+            }
+        }
+
         public boolean build() {
             // verification
-            if (null == closePolicy) throw new IllegalStateException("ClosePolicy cannot be null");
-            if (null == point && null == view)
-                throw new IllegalStateException("Target point or target view must be specified");
-            if (gravity == Gravity.CENTER) hideArrow = true;
+            validate();
 
             TooltipManager tmanager = this.manager.get();
             if (null != tmanager) {
@@ -471,49 +1121,77 @@ public class TooltipManager {
         None
     }
 
+    /**
+     * Shape of the areas cut out of the background around the highlighted views.
+     * {@link #CIRCLE} and {@link #ROUND_RECT} are animated spotlights, following
+     * the views when they move.
+     */
+    public static enum HighlightShape {
+        RECTANGLE, CIRCLE, ROUND_RECT
+    }
+
     public static enum Gravity {
         LEFT, RIGHT, TOP, BOTTOM, CENTER
     }
 
 
+    /**
+     * Destroys the manager bound to the given activity, removing all of its tooltips.
+     * This is done automatically when the activity is destroyed, calling it is only
+     * needed to release the tooltips earlier.
+     */
     public static void removeInstance(Activity activity) {
         if (DBG) {
-            Log.i(TAG, "removeInstance: " + activity + ", hashCode: " + activity.hashCode());
-            Log.v(TAG, "instances: " + instances.size());
+            Log.i(TAG, "removeInstance: " + activity);
         }
 
-        TooltipManager sInstance = instances.remove(activity.hashCode());
+        final TooltipManager sInstance;
+        synchronized (instances) {
+            if (DBG) Log.v(TAG, "instances: " + instances.size());
+            sInstance = instances.remove(activity);
+        }
 
         if (sInstance != null) {
-            synchronized (TooltipManager.class) {
-                if (DBG) Log.d(TAG, "destroying instance: " + sInstance);
-                sInstance.destroy();
-            }
+            if (DBG) Log.d(TAG, "destroying instance: " + sInstance);
+            sInstance.destroy();
         }
     }
 
     public static TooltipManager getInstance(Activity activity) {
-        if (DBG) Log.i(TAG, "getInstance: " + activity + ", hashCode: " + activity.hashCode());
+        if (DBG) Log.i(TAG, "getInstance: " + activity);
 
-        TooltipManager sInstance = instances.get(activity.hashCode());
+        synchronized (instances) {
+            TooltipManager sInstance = instances.get(activity);
 
-        if (DBG) {
-            Log.v(TAG, "instances: " + instances.size());
-            Log.v(TAG, "sInstance: " + sInstance);
-        }
+            if (DBG) {
+                Log.v(TAG, "instances: " + instances.size());
+                Log.v(TAG, "sInstance: " + sInstance);
+            }
 
-        if (sInstance == null) {
-            synchronized (TooltipManager.class) {
-                sInstance = instances.get(activity.hashCode());
-                if (sInstance == null) {
-                    synchronized (TooltipManager.class) {
-                        sInstance = new TooltipManager(activity);
-                        instances.putIfAbsent(activity.hashCode(), sInstance);
-                    }
+            if (sInstance == null) {
+                sInstance = new TooltipManager(activity);
+
+                // a finishing or destroyed activity may never be reported as destroyed again:
+                // its manager is not kept, and it will not show anything
+                final Application application = activity.getApplication();
+                if (null != application && !activity.isFinishing() && !isDestroyed(activity)) {
+                    instances.put(activity, sInstance);
+                    registerLifecycleCallbacks(application);
                 }
             }
+            return sInstance;
+        }
+    }
+
+    private static boolean isDestroyed(Activity activity) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && activity.isDestroyed();
+    }
+
+    private static void registerLifecycleCallbacks(Application application) {
+        if (null != application && !sRegisteredApplications.containsKey(application)) {
+            sRegisteredApplications.put(application, Boolean.TRUE);
+            application.registerActivityLifecycleCallbacks(sLifecycleCallbacks);
         }
-        return sInstance;
     }
 
     public static interface onTooltipClosingCallback {
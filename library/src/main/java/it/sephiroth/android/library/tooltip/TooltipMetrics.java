@@ -0,0 +1,54 @@
+package it.sephiroth.android.library.tooltip;
+
+/**
+ * Receives performance metrics for each tooltip of a {@link TooltipManager},
+ * see {@link TooltipManager#setMetrics(TooltipMetrics)}.
+ * All the callbacks are invoked on the main thread.
+ */
+public interface TooltipMetrics {
+
+    /**
+     * The tooltip content view has been inflated and initialized
+     *
+     * @param id    tooltip id
+     * @param nanos time spent inflating and initializing the content view
+     */
+    void onInflate(int id, long nanos);
+
+    /**
+     * A layout pass of the tooltip completed
+     *
+     * @param id            tooltip id
+     * @param measureNanos  time spent in the last measure pass
+     * @param layoutNanos   time spent in the layout pass, placement included
+     */
+    void onMeasureLayout(int id, long measureNanos, long layoutNanos);
+
+    /**
+     * The tooltip has been placed
+     *
+     * @param id       tooltip id
+     * @param attempts number of gravities tried before one fit, including the successful one.
+     *                 0 when the placement was taken from the {@link PlacementCache}
+     * @param success  false if none of the gravities fit
+     */
+    void onPlacement(int id, int attempts, boolean success);
+
+    /**
+     * An in or out animation completed
+     *
+     * @param id            tooltip id
+     * @param in            true for the show animation, false for the hide one
+     * @param durationMs    actual duration of the animation
+     * @param droppedFrames number of frames dropped while the animation was running
+     */
+    void onAnimation(int id, boolean in, long durationMs, int droppedFrames);
+
+    /**
+     * The tooltip is fully visible
+     *
+     * @param id        tooltip id
+     * @param elapsedMs time elapsed since the tooltip was requested, show delay included
+     */
+    void onShown(int id, long elapsedMs);
+}
@@ -0,0 +1,136 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import java.util.Locale;
+
+/**
+ * Debug overlay showing the metrics aggregated over all the tooltips of a manager,
+ * see {@link TooltipManager#setMetricsHudEnabled(boolean)}.
+ * The text is refreshed at most once per frame.
+ */
+final class TooltipMetricsHud implements TooltipMetrics, FrameHandler.Callback {
+
+    private final TextView mTextView;
+    private final FrameHandler mFrameHandler = new FrameHandler(this);
+
+    private int mInflateCount;
+    private long mInflateNanos;
+    private int mLayoutCount;
+    private long mMeasureNanos;
+    private long mLayoutNanos;
+    private int mPlacementCount;
+    private int mPlacementAttempts;
+    private int mPlacementFailures;
+    private int mAnimationCount;
+    private long mAnimationMs;
+    private int mDroppedFrames;
+    private int mShownCount;
+    private long mShownMs;
+
+    TooltipMetricsHud(Activity activity) {
+        mTextView = new TextView(activity);
+        mTextView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        mTextView.setTextColor(Color.WHITE);
+        mTextView.setBackgroundColor(0x99000000);
+        mTextView.setClickable(false);
+        mTextView.setFocusable(false);
+        final int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 4, activity.getResources().getDisplayMetrics());
+        mTextView.setPadding(padding, padding, padding, padding);
+        update();
+    }
+
+    void attach(ViewGroup parent) {
+        if (null == mTextView.getParent()) {
+            FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.BOTTOM | Gravity.RIGHT);
+            parent.addView(mTextView, params);
+        }
+    }
+
+    void detach() {
+        mFrameHandler.cancel();
+        ViewParent parent = mTextView.getParent();
+        if (null != parent) {
+            ((ViewGroup) parent).removeView(mTextView);
+        }
+    }
+
+    @Override
+    public void onInflate(final int id, final long nanos) {
+        mInflateCount++;
+        mInflateNanos += nanos;
+        invalidate();
+    }
+
+    @Override
+    public void onMeasureLayout(final int id, final long measureNanos, final long layoutNanos) {
+        mLayoutCount++;
+        mMeasureNanos += measureNanos;
+        mLayoutNanos += layoutNanos;
+        invalidate();
+    }
+
+    @Override
+    public void onPlacement(final int id, final int attempts, final boolean success) {
+        mPlacementCount++;
+        mPlacementAttempts += attempts;
+        if (!success) {
+            mPlacementFailures++;
+        }
+        invalidate();
+    }
+
+    @Override
+    public void onAnimation(final int id, final boolean in, final long durationMs, final int droppedFrames) {
+        mAnimationCount++;
+        mAnimationMs += durationMs;
+        mDroppedFrames += droppedFrames;
+        invalidate();
+    }
+
+    @Override
+    public void onShown(final int id, final long elapsedMs) {
+        mShownCount++;
+        mShownMs += elapsedMs;
+        invalidate();
+    }
+
+    private void invalidate() {
+        mFrameHandler.schedule();
+    }
+
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        update();
+    }
+
+    private void update() {
+        mTextView.setText(String.format(Locale.US,
+                "shown: %d, avg %dms\n"
+                        + "inflate: avg %.2fms\n"
+                        + "measure/layout: avg %.2f/%.2fms\n"
+                        + "placement: avg %.1f tries, %d failed\n"
+                        + "animations: %d, avg %dms, %d dropped frames",
+                mShownCount, average(mShownMs, mShownCount),
+                averageMs(mInflateNanos, mInflateCount),
+                averageMs(mMeasureNanos, mLayoutCount), averageMs(mLayoutNanos, mLayoutCount),
+                mPlacementCount > 0 ? (float) mPlacementAttempts / mPlacementCount : 0f, mPlacementFailures,
+                mAnimationCount, average(mAnimationMs, mAnimationCount), mDroppedFrames));
+    }
+
+    private static long average(long total, int count) {
+        return count > 0 ? total / count : 0;
+    }
+
+    private static float averageMs(long totalNanos, int count) {
+        return count > 0 ? totalNanos / 1000000f / count : 0f;
+    }
+}
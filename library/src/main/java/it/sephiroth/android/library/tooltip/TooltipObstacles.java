@@ -0,0 +1,66 @@
+package it.sephiroth.android.library.tooltip;
+
+/**
+ * The areas a tooltip should not be placed over: the bubbles of the other tooltips of
+ * the same manager and the keep-clear rects registered with
+ * {@link TooltipManager#setKeepClearRect(int, android.graphics.Rect)}.
+ * All the rects are in window coordinates. Main thread only.
+ */
+final class TooltipObstacles implements PlacementSolver.Obstacles {
+    private final RectIndex mBubbles = new RectIndex();
+    private final RectIndex mKeepClear = new RectIndex();
+
+    @Override
+    public boolean intersects(final Object exclude, final int left, final int top, final int right, final int bottom) {
+        return mKeepClear.intersects(left, top, right, bottom)
+                || mBubbles.intersects(exclude, left, top, right, bottom);
+    }
+
+    /**
+     * @return true if the given point is inside one of the bubbles
+     */
+    boolean hitBubble(int x, int y) {
+        return mBubbles.intersects(x, y, x + 1, y + 1);
+    }
+
+    /**
+     * @param exclude the tooltip being placed, its own bubble is ignored
+     * @return a value changing only when the areas intersecting the given rect change,
+     * see {@link RectIndex#getRegionVersion(Object, int, int, int, int)}
+     */
+    long getRegionVersion(Object exclude, int left, int top, int right, int bottom) {
+        final long bubbles = mBubbles.getRegionVersion(exclude, left, top, right, bottom);
+        final long keepClear = mKeepClear.getRegionVersion(left, top, right, bottom);
+        final long count = (bubbles >>> 32) + (keepClear >>> 32);
+        final long stamp = Math.max(bubbles & 0xffffffffL, keepClear & 0xffffffffL);
+        return count << 32 | stamp;
+    }
+
+    /**
+     * @param owner the tooltip view owning the bubble. A view hidden and shown again with
+     *              the same id is a new owner: the hiding one can only move or remove its own bubble.
+     */
+    void setBubble(Object owner, int left, int top, int right, int bottom) {
+        mBubbles.put(owner, left, top, right, bottom);
+    }
+
+    void removeBubble(Object owner) {
+        mBubbles.remove(owner);
+    }
+
+    void clearBubbles() {
+        mBubbles.clear();
+    }
+
+    void setKeepClear(int key, int left, int top, int right, int bottom) {
+        mKeepClear.put(key, left, top, right, bottom);
+    }
+
+    void removeKeepClear(int key) {
+        mKeepClear.remove(key);
+    }
+
+    void clearKeepClear() {
+        mKeepClear.clear();
+    }
+}
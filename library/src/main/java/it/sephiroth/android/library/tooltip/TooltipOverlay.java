@@ -0,0 +1,220 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * Single full screen container hosting all the tooltips of an activity,
+ * used when {@link TooltipManager#setSharedOverlayEnabled(boolean)} is on.<br />
+ * The decor view sees one child regardless of the number of tooltips; the overlay
+ * measures and lays out its children in one pass and never takes part in the touch
+ * dispatch, see {@link TooltipTouchRouter}.<br />
+ * The backgrounds of the hosted tooltips are merged into a single one drawn by the
+ * overlay: the color of the top most visible tooltip, with the cutouts of all their
+ * highlight views. The screen is dimmed once per frame regardless of the number of tooltips.
+ */
+class TooltipOverlay extends ViewGroup {
+    private static final String TAG = "TooltipOverlay";
+
+    private static final class Member {
+        final TooltipView layout;
+        final TooltipBackgroundDrawable source;
+        boolean shown;
+
+        Member(TooltipView layout, TooltipBackgroundDrawable source) {
+            this.layout = layout;
+            this.source = source;
+        }
+    }
+
+    // in attach order, the last one is the top most
+    private final ArrayList<Member> mMembers = new ArrayList<Member>();
+    private final TooltipBackgroundDrawable mBackground = new TooltipBackgroundDrawable();
+    private final BackgroundFade mBackgroundFade = new BackgroundFade(mBackground);
+    private boolean mAttached;
+
+    TooltipOverlay(final Context context) {
+        super(context);
+        setWillNotDraw(true);
+        setClipChildren(false);
+        mBackground.setAlpha(0);
+    }
+
+    /**
+     * The background of the given tooltip is drawn by the overlay from now on,
+     * the tooltip must not draw its own
+     */
+    void addBackground(TooltipView layout, TooltipBackgroundDrawable background) {
+        if (null != findMember(layout)) return;
+        mMembers.add(new Member(layout, background));
+    }
+
+    void removeBackground(TooltipView layout) {
+        final Member member = findMember(layout);
+        if (null == member) return;
+
+        mMembers.remove(member);
+        if (mMembers.isEmpty()) {
+            clearBackgrounds();
+        } else if (member.shown) {
+            if (getShownCount() == 0) {
+                mBackgroundFade.jumpTo(false);
+            } else {
+                mergeBackgrounds();
+            }
+        }
+    }
+
+    void clearBackgrounds() {
+        mMembers.clear();
+        mBackgroundFade.jumpTo(false);
+        mBackground.release();
+        setBackgroundCompat(null);
+    }
+
+    /**
+     * Called by the tooltips when they start their in or out animation
+     */
+    void setBackgroundShown(TooltipView layout, boolean shown, long duration) {
+        final Member member = findMember(layout);
+        if (null == member || member.shown == shown) return;
+
+        member.shown = shown;
+        final int count = getShownCount();
+        if (DBG) Log.v(TAG, "setBackgroundShown: " + shown + ", shown: " + count);
+
+        if (shown) {
+            mergeBackgrounds();
+            if (count == 1) {
+                mBackgroundFade.fadeIn(duration);
+            }
+        } else if (count == 0) {
+            // the merged background stays as it is while it fades out
+            mBackgroundFade.fadeOut(duration);
+        } else {
+            mergeBackgrounds();
+        }
+    }
+
+    private Member findMember(TooltipView layout) {
+        for (int i = 0; i < mMembers.size(); i++) {
+            if (mMembers.get(i).layout == layout) {
+                return mMembers.get(i);
+            }
+        }
+        return null;
+    }
+
+    private int getShownCount() {
+        int count = 0;
+        for (int i = 0; i < mMembers.size(); i++) {
+            if (mMembers.get(i).shown) count++;
+        }
+        return count;
+    }
+
+    private void mergeBackgrounds() {
+        int color = 0;
+        Drawable highlightDrawable = null;
+        TooltipManager.HighlightShape shape = TooltipManager.HighlightShape.RECTANGLE;
+        int cornerRadius = 0;
+        final List<View> highlightViews = new ArrayList<View>();
+
+        for (int i = 0; i < mMembers.size(); i++) {
+            final Member member = mMembers.get(i);
+            if (!member.shown) continue;
+
+            final TooltipBackgroundDrawable source = member.source;
+            color = source.getBackgroundColor();
+            if (null != source.getHighlightViews()) {
+                highlightViews.addAll(source.getHighlightViews());
+            }
+            if (null != source.getHighlightDrawable()) {
+                highlightDrawable = source.getHighlightDrawable();
+            }
+            if (shape == TooltipManager.HighlightShape.RECTANGLE) {
+                shape = source.getHighlightShape();
+                cornerRadius = source.getCornerRadius();
+            }
+        }
+
+        mBackground.setup(color, highlightViews.isEmpty() ? null : highlightViews, highlightDrawable);
+        mBackground.setHighlightShape(shape, cornerRadius);
+        if (mAttached) {
+            mBackground.attachHighlights();
+        }
+        setBackgroundCompat(mBackground.isTransparent() ? null : mBackground);
+    }
+
+    private void setBackgroundCompat(Drawable background) {
+        if (getBackground() == background) return;
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            //noinspection deprecation
+            setBackgroundDrawable(background);
+        } else {
+            setBackground(background);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        mBackground.attachHighlights();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mAttached = false;
+        mBackground.detachHighlights();
+    }
+
+    @Override
+    protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+        final int height = MeasureSpec.getSize(heightMeasureSpec);
+
+        final int childWidthMeasureSpec = MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY);
+        final int childHeightMeasureSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY);
+
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() != GONE) {
+                child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+            }
+        }
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onLayout(final boolean changed, final int l, final int t, final int r, final int b) {
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() != GONE) {
+                child.layout(0, 0, r - l, b - t);
+            }
+        }
+    }
+
+    /**
+     * The touches are delivered to the tooltips by the {@link TooltipTouchRouter}
+     */
+    @Override
+    public boolean dispatchTouchEvent(final MotionEvent event) {
+        return false;
+    }
+}
@@ -0,0 +1,144 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.View;
+
+import java.util.ArrayList;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * Recycling pool owned by a {@link TooltipManager}.<br />
+ * It keeps two levels of released objects: the {@link TooltipView} containers, which are
+ * bound again to a new {@link TooltipManager.Builder}, and the inflated content views,
+ * keyed by their layout resource id.
+ * The pool must be accessed from the main thread only.
+ */
+public final class TooltipPool {
+    private static final String TAG = "TooltipPool";
+
+    private static final int DEFAULT_MAX_CONTAINERS = 4;
+    private static final int DEFAULT_MAX_CONTENT_VIEWS = 2;
+
+    private final ArrayList<TooltipView> mContainers = new ArrayList<TooltipView>();
+    private final SparseArray<ArrayList<View>> mContentViews = new SparseArray<ArrayList<View>>();
+
+    private int mMaxContainers = DEFAULT_MAX_CONTAINERS;
+    private int mMaxContentViews = DEFAULT_MAX_CONTENT_VIEWS;
+
+    private int mContainerHits;
+    private int mContainerMisses;
+    private int mContentHits;
+    private int mContentMisses;
+
+    TooltipPool() {
+    }
+
+    /**
+     * @param maxContainers   max number of released {@link TooltipView} containers to keep, 0 disables the pool
+     * @param maxContentViews max number of released content views to keep for each layout resource id
+     */
+    public void setMaxSize(int maxContainers, int maxContentViews) {
+        mMaxContainers = Math.max(0, maxContainers);
+        mMaxContentViews = Math.max(0, maxContentViews);
+
+        while (mContainers.size() > mMaxContainers) {
+            mContainers.remove(mContainers.size() - 1);
+        }
+
+        for (int i = 0; i < mContentViews.size(); i++) {
+            ArrayList<View> views = mContentViews.valueAt(i);
+            while (views.size() > mMaxContentViews) {
+                views.remove(views.size() - 1);
+            }
+        }
+    }
+
+    public int getContainerHitCount() {
+        return mContainerHits;
+    }
+
+    public int getContainerMissCount() {
+        return mContainerMisses;
+    }
+
+    public int getContentViewHitCount() {
+        return mContentHits;
+    }
+
+    public int getContentViewMissCount() {
+        return mContentMisses;
+    }
+
+    public void clear() {
+        mContainers.clear();
+        mContentViews.clear();
+    }
+
+    TooltipView acquireContainer(Context context, TooltipManager.Builder builder) {
+        final int size = mContainers.size();
+        if (size > 0) {
+            mContainerHits++;
+            TooltipView view = mContainers.remove(size - 1);
+            view.bind(builder);
+            return view;
+        }
+        mContainerMisses++;
+        return new TooltipView(context, builder);
+    }
+
+    /**
+     * Recycles a detached container and its content view.
+     */
+    void releaseContainer(TooltipView view) {
+        if (null != view.getParent()) {
+            Log.w(TAG, "cannot release an attached tooltip: " + view.getTooltipId());
+            return;
+        }
+
+        view.recycle(this);
+
+        if (mContainers.size() < mMaxContainers && !mContainers.contains(view)) {
+            mContainers.add(view);
+        }
+        printStats();
+    }
+
+    boolean hasContentView(int layoutResId) {
+        ArrayList<View> views = mContentViews.get(layoutResId);
+        return null != views && views.size() > 0;
+    }
+
+    View acquireContentView(int layoutResId) {
+        ArrayList<View> views = mContentViews.get(layoutResId);
+        if (null != views && views.size() > 0) {
+            mContentHits++;
+            return views.remove(views.size() - 1);
+        }
+        mContentMisses++;
+        return null;
+    }
+
+    void releaseContentView(int layoutResId, View view) {
+        if (null != view.getParent()) return;
+
+        ArrayList<View> views = mContentViews.get(layoutResId);
+        if (null == views) {
+            views = new ArrayList<View>(mMaxContentViews);
+            mContentViews.put(layoutResId, views);
+        }
+
+        if (views.size() < mMaxContentViews) {
+            views.add(view);
+        }
+    }
+
+    private void printStats() {
+        if (DBG) {
+            Log.d(TAG, "containers: " + mContainerHits + " hits, " + mContainerMisses + " misses, "
+                    + "content views: " + mContentHits + " hits, " + mContentMisses + " misses");
+        }
+    }
+}
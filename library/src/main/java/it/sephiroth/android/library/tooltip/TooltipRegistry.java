@@ -0,0 +1,112 @@
+package it.sephiroth.android.library.tooltip;
+
+import java.util.Arrays;
+
+/**
+ * Int keyed registry of the active tooltips.<br />
+ * Readers never block and never box the key: they binary search an immutable
+ * snapshot published through a volatile field. Writers are serialized and publish
+ * a new copy of the snapshot on every change, which is cheap for the handful of
+ * tooltips a screen usually holds.
+ */
+final class TooltipRegistry {
+    private static final Table EMPTY = new Table(new int[0], new TooltipView[0]);
+
+    private static final class Table {
+        final int[] keys;
+        final TooltipView[] values;
+
+        Table(int[] keys, TooltipView[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+    }
+
+    private volatile Table mTable = EMPTY;
+
+    TooltipView get(int id) {
+        final Table table = mTable;
+        final int index = Arrays.binarySearch(table.keys, id);
+        return index >= 0 ? table.values[index] : null;
+    }
+
+    boolean contains(int id) {
+        return Arrays.binarySearch(mTable.keys, id) >= 0;
+    }
+
+    int size() {
+        return mTable.keys.length;
+    }
+
+    /**
+     * @return the current snapshot of the registered tooltips, sorted by id.
+     * The returned array is shared and must not be modified.
+     */
+    TooltipView[] values() {
+        return mTable.values;
+    }
+
+    /**
+     * @return false if a tooltip with the same id was already registered
+     */
+    synchronized boolean put(int id, TooltipView view) {
+        final Table table = mTable;
+        final int index = Arrays.binarySearch(table.keys, id);
+        if (index >= 0) {
+            return false;
+        }
+
+        final int insert = -(index + 1);
+        final int size = table.keys.length;
+        final int[] keys = new int[size + 1];
+        final TooltipView[] values = new TooltipView[size + 1];
+
+        System.arraycopy(table.keys, 0, keys, 0, insert);
+        System.arraycopy(table.values, 0, values, 0, insert);
+        keys[insert] = id;
+        values[insert] = view;
+        System.arraycopy(table.keys, insert, keys, insert + 1, size - insert);
+        System.arraycopy(table.values, insert, values, insert + 1, size - insert);
+
+        mTable = new Table(keys, values);
+        return true;
+    }
+
+    /**
+     * Removes all the tooltips in one step
+     *
+     * @return the removed tooltips, sorted by id
+     */
+    synchronized TooltipView[] clear() {
+        final TooltipView[] result = mTable.values;
+        mTable = EMPTY;
+        return result;
+    }
+
+    synchronized TooltipView remove(int id) {
+        final Table table = mTable;
+        final int index = Arrays.binarySearch(table.keys, id);
+        if (index < 0) {
+            return null;
+        }
+
+        final TooltipView result = table.values[index];
+        final int size = table.keys.length;
+
+        if (size == 1) {
+            mTable = EMPTY;
+            return result;
+        }
+
+        final int[] keys = new int[size - 1];
+        final TooltipView[] values = new TooltipView[size - 1];
+
+        System.arraycopy(table.keys, 0, keys, 0, index);
+        System.arraycopy(table.values, 0, values, 0, index);
+        System.arraycopy(table.keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(table.values, index + 1, values, index, size - index - 1);
+
+        mTable = new Table(keys, values);
+        return result;
+    }
+}
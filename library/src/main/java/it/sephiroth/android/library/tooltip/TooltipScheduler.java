@@ -0,0 +1,171 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * Decides when a requested tooltip is actually attached.<br />
+ * Tooltips are attached right away as long as fewer than {@link #setMaxVisible(int)} are
+ * visible and the attach/inflate work done in the current frame is within the frame budget.
+ * Otherwise they are queued by priority, higher first and in request order for equal
+ * priorities, and promoted on the next frames or when other tooltips are removed.
+ * Must be used from the main thread, only {@link #contains(int)} can be called from any thread.
+ */
+final class TooltipScheduler implements FrameHandler.Callback {
+    private static final String TAG = "TooltipScheduler";
+
+    static final long DEFAULT_FRAME_BUDGET_MS = 8;
+
+    static interface Host {
+        int getVisibleCount();
+
+        /**
+         * @return the attached tooltip, or null if it could not be attached
+         */
+        TooltipView attach(TooltipManager.Builder builder, boolean immediate);
+    }
+
+    private static final class Entry {
+        final TooltipManager.Builder builder;
+        final boolean immediate;
+
+        Entry(final TooltipManager.Builder builder, final boolean immediate) {
+            this.builder = builder;
+            this.immediate = immediate;
+        }
+    }
+
+    private final Host mHost;
+    private final FrameHandler mFrameHandler;
+    private final ArrayList<Entry> mQueue = new ArrayList<Entry>();
+
+    private int mMaxVisible = Integer.MAX_VALUE;
+    private long mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_MS * 1000000L;
+    private long mFrameWorkNanos;
+
+    TooltipScheduler(final Host host) {
+        mHost = host;
+        mFrameHandler = new FrameHandler(this);
+    }
+
+    void setMaxVisible(int maxVisible) {
+        mMaxVisible = maxVisible > 0 ? maxVisible : Integer.MAX_VALUE;
+        if (!mQueue.isEmpty()) {
+            mFrameHandler.schedule();
+        }
+    }
+
+    void setFrameBudget(long ms) {
+        mFrameBudgetNanos = ms > 0 ? ms * 1000000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return false if the tooltip was to be attached immediately, but it failed
+     */
+    boolean schedule(TooltipManager.Builder builder, boolean immediate) {
+        if (isEmpty() && canAttach()) {
+            return null != attach(builder, immediate);
+        }
+
+        if (DBG) Log.v(TAG, "queue: " + builder.id + ", priority: " + builder.priority);
+
+        synchronized (mQueue) {
+            int index = mQueue.size();
+            while (index > 0 && mQueue.get(index - 1).builder.priority < builder.priority) {
+                index--;
+            }
+            mQueue.add(index, new Entry(builder, immediate));
+        }
+        mFrameHandler.schedule();
+        return true;
+    }
+
+    boolean contains(int id) {
+        synchronized (mQueue) {
+            for (int i = 0; i < mQueue.size(); i++) {
+                if (mQueue.get(i).builder.id == id) return true;
+            }
+            return false;
+        }
+    }
+
+    boolean remove(int id) {
+        synchronized (mQueue) {
+            for (int i = 0; i < mQueue.size(); i++) {
+                if (mQueue.get(i).builder.id == id) {
+                    mQueue.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    void clear() {
+        synchronized (mQueue) {
+            mQueue.clear();
+        }
+        mFrameHandler.cancel();
+    }
+
+    /**
+     * A tooltip has been removed, queued tooltips can be promoted
+     */
+    void onTooltipRemoved() {
+        if (!isEmpty()) {
+            mFrameHandler.schedule();
+        }
+    }
+
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        mFrameWorkNanos = 0;
+
+        Entry entry;
+        while (canAttach() && null != (entry = poll())) {
+            attach(entry.builder, entry.immediate);
+        }
+
+        if (!isEmpty() && mHost.getVisibleCount() < mMaxVisible) {
+            mFrameHandler.schedule();
+        }
+    }
+
+    private Entry poll() {
+        synchronized (mQueue) {
+            return mQueue.isEmpty() ? null : mQueue.remove(0);
+        }
+    }
+
+    private boolean isEmpty() {
+        synchronized (mQueue) {
+            return mQueue.isEmpty();
+        }
+    }
+
+    private boolean canAttach() {
+        return mHost.getVisibleCount() < mMaxVisible && mFrameWorkNanos < mFrameBudgetNanos;
+    }
+
+    private TooltipView attach(TooltipManager.Builder builder, boolean immediate) {
+        final long start = System.nanoTime();
+        final TooltipView view = mHost.attach(builder, immediate);
+
+        if (null != view && !view.isAttached()) {
+            // the window is not attached yet, so the inflation is deferred to the
+            // next traversal: let one tooltip per frame go through
+            mFrameWorkNanos = mFrameBudgetNanos;
+        } else {
+            mFrameWorkNanos += System.nanoTime() - start;
+        }
+
+        if (DBG) Log.v(TAG, "attach: " + builder.id + ", frame work: " + mFrameWorkNanos / 1000 + "us");
+
+        // reset the frame budget on the next frame
+        mFrameHandler.schedule();
+        return view;
+    }
+}
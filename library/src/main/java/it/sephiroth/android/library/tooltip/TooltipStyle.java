@@ -0,0 +1,135 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Paint;
+import android.util.Log;
+import android.util.TypedValue;
+
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * The {@link R.styleable#TooltipLayout} attributes resolved once per theme and style,
+ * and shared by all the tooltips using them.<br />
+ * Instances are immutable, the paints included: whoever needs to change them
+ * (alpha, color filter) must work on a copy. The cache is dropped on configuration
+ * changes and on low memory. Main thread only.
+ */
+final class TooltipStyle {
+    private static final String TAG = "TooltipStyle";
+
+    private static final WeakHashMap<Resources.Theme, ArrayList<TooltipStyle>> sCache =
+            new WeakHashMap<Resources.Theme, ArrayList<TooltipStyle>>();
+    private static boolean sCallbacksRegistered;
+
+    private final int defStyleAttr;
+    private final int defStyleRes;
+
+    final int padding;
+    final int strokeColor;
+    final int backgroundColor;
+    final int strokeWidth;
+    final float cornerRadius;
+    final float arrowRatio;
+    final float elevation;
+    final int textAppearance;
+
+    /**
+     * Fill paint of the bubble, null if the background color is transparent
+     */
+    final Paint fillPaint;
+
+    /**
+     * Stroke paint of the bubble, null if the stroke color is transparent
+     */
+    final Paint strokePaint;
+
+    private TooltipStyle(final Resources.Theme theme, int defStyleAttr, int defStyleRes) {
+        this.defStyleAttr = defStyleAttr;
+        this.defStyleRes = defStyleRes;
+
+        TypedArray array = theme.obtainStyledAttributes(null, R.styleable.TooltipLayout, defStyleAttr, defStyleRes);
+        this.padding = array.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_padding, 30);
+        this.cornerRadius = array.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_cornerRadius, 4);
+        this.strokeWidth = array.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_strokeWeight, 30);
+        this.backgroundColor = array.getColor(R.styleable.TooltipLayout_ttlm_backgroundColor, 0);
+        this.strokeColor = array.getColor(R.styleable.TooltipLayout_ttlm_strokeColor, 0);
+        this.arrowRatio = array.getFloat(R.styleable.TooltipLayout_ttlm_arrowRatio, 1.4f);
+        this.elevation = array.getDimension(R.styleable.TooltipLayout_ttlm_elevation, 0);
+        array.recycle();
+
+        TypedValue value = new TypedValue();
+        if (theme.resolveAttribute(R.attr.ttlm_defaultTextStyle, value, true)) {
+            this.textAppearance = value.resourceId;
+        } else {
+            this.textAppearance = R.style.ToolTipTextDefaultStyle;
+        }
+
+        if (backgroundColor != 0) {
+            fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            fillPaint.setColor(backgroundColor);
+            fillPaint.setStyle(Paint.Style.FILL);
+        } else {
+            fillPaint = null;
+        }
+
+        if (strokeColor != 0) {
+            strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            strokePaint.setColor(strokeColor);
+            strokePaint.setStyle(Paint.Style.STROKE);
+            strokePaint.setStrokeWidth(strokeWidth);
+        } else {
+            strokePaint = null;
+        }
+    }
+
+    /**
+     * @return the style resolved against the theme of the given context
+     */
+    static TooltipStyle obtain(final Context context, int defStyleAttr, int defStyleRes) {
+        registerCallbacks(context);
+
+        final Resources.Theme theme = context.getTheme();
+        ArrayList<TooltipStyle> styles = sCache.get(theme);
+        if (null == styles) {
+            styles = new ArrayList<TooltipStyle>(2);
+            sCache.put(theme, styles);
+        }
+
+        for (int i = 0; i < styles.size(); i++) {
+            final TooltipStyle style = styles.get(i);
+            if (style.defStyleAttr == defStyleAttr && style.defStyleRes == defStyleRes) {
+                return style;
+            }
+        }
+
+        if (DBG) Log.v(TAG, "resolve style: " + defStyleRes + ", themes: " + sCache.size());
+        final TooltipStyle style = new TooltipStyle(theme, defStyleAttr, defStyleRes);
+        styles.add(style);
+        return style;
+    }
+
+    private static void registerCallbacks(final Context context) {
+        if (sCallbacksRegistered) return;
+        sCallbacksRegistered = true;
+
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks() {
+            @Override
+            public void onConfigurationChanged(final Configuration newConfig) {
+                if (DBG) Log.v(TAG, "configuration changed");
+                sCache.clear();
+            }
+
+            @Override
+            public void onLowMemory() {
+                sCache.clear();
+            }
+        });
+    }
+}
@@ -1,15 +1,19 @@
 package it.sephiroth.android.library.tooltip;
 
+import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.res.TypedArray;
 import android.graphics.Canvas;
+import android.graphics.Outline;
+import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.PixelFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.util.Log;
 
 import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
@@ -18,65 +22,113 @@ class TooltipTextDrawable extends Drawable {
 	static final String TAG = "ToolTipTextDrawable";
 
 	private final RectF rectF;
-	private final Path path;
+	private final BubblePathCache.Key pathKey = new BubblePathCache.Key();
+	private Path path;
 	private Point point;
 
-	private final Paint bgPaint;
-	private final Paint stPaint;
+	// shared with the style until alpha or a color filter are applied
+	private Paint bgPaint;
+	private Paint stPaint;
+	private boolean paintsCopied;
+	private int alpha = 255;
 
-	private final float arrowRatio;
-	private final float ellipseSize;
-	private final int strokeWidth;
-	private final int strokeColor;
-	private final int backgroundColor;
+	private float arrowRatio;
+	private float ellipseSize;
+	private int strokeColor;
+	private int backgroundColor;
+	private float elevation;
+	private Path outlinePath;
 
 	private int padding = 0;
 	private int arrowWeight = 0;
+	private boolean pathDirty = true;
 
 	private TooltipManager.Gravity gravity;
 
 	public TooltipTextDrawable(final Context context, final TooltipManager.Builder builder) {
+		this.rectF = new RectF();
+		setup(context, builder);
+	}
 
-		TypedArray theme =
-			context.getTheme().obtainStyledAttributes(null, R.styleable.TooltipLayout, builder.defStyleAttr, builder.defStyleRes);
-		this.ellipseSize = theme.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_cornerRadius, 4);
-		this.strokeWidth = theme.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_strokeWeight, 30);
-		this.backgroundColor = theme.getColor(R.styleable.TooltipLayout_ttlm_backgroundColor, 0);
-		this.strokeColor = theme.getColor(R.styleable.TooltipLayout_ttlm_strokeColor, 0);
-		this.arrowRatio = theme.getFloat(R.styleable.TooltipLayout_ttlm_arrowRatio, 1.4f);
-		theme.recycle();
+	/**
+	 * Applies the style of a new tooltip, used both on creation and when the
+	 * drawable is reused by a pooled {@link TooltipView}
+	 */
+	void setup(final Context context, final TooltipManager.Builder builder) {
+		final TooltipStyle style = TooltipStyle.obtain(context, builder.defStyleAttr, builder.defStyleRes);
+		this.ellipseSize = style.cornerRadius;
+		this.backgroundColor = style.backgroundColor;
+		this.strokeColor = style.strokeColor;
+		this.arrowRatio = style.arrowRatio;
+		this.elevation = builder.elevation >= 0 ? builder.elevation : style.elevation;
+		this.bgPaint = style.fillPaint;
+		this.stPaint = style.strokePaint;
+		this.paintsCopied = false;
+		this.alpha = 255;
+
+		this.point = null;
+		this.gravity = null;
+		this.padding = 0;
+		this.arrowWeight = 0;
+		this.path = null;
+		invalidatePath();
+	}
 
-		this.rectF = new RectF();
+	/**
+	 * The paints of the style are shared, they are copied before the first change
+	 */
+	private void copyPaints() {
+		if (paintsCopied) {
+			return;
+		}
+		paintsCopied = true;
 
-		if (backgroundColor != 0) {
-			bgPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-			bgPaint.setColor(this.backgroundColor);
-			bgPaint.setStyle(Paint.Style.FILL);
+		if (null != bgPaint) {
+			bgPaint = new Paint(bgPaint);
 		}
-		else {
-			bgPaint = null;
+		if (null != stPaint) {
+			stPaint = new Paint(stPaint);
 		}
+	}
 
-		if (strokeColor != 0) {
-			stPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-			stPaint.setColor(strokeColor);
-			stPaint.setStyle(Paint.Style.STROKE);
-			stPaint.setStrokeWidth(strokeWidth);
-		}
-		else {
-			stPaint = null;
+	/**
+	 * @return the bubble path, at the origin
+	 */
+	private Path getPath() {
+		if (pathDirty) {
+			pathDirty = false;
+			final Rect bounds = getBounds();
+			path = obtainPath(bounds.width(), bounds.height());
 		}
+		return path;
+	}
 
-		path = new Path();
+	/**
+	 * Returns the bubble path for the given size, from the {@link BubblePathCache} if possible.
+	 * The path is built at the origin and must not be modified.
+	 */
+	private Path obtainPath(int width, int height) {
+		final boolean hasPoint = null != point && null != gravity;
+		pathKey.set(
+			width, height, padding, arrowWeight, ellipseSize, hasPoint ? gravity : null, hasPoint ? point.x : 0,
+			hasPoint ? point.y : 0);
+
+		Path result = BubblePathCache.get(pathKey);
+		if (null == result) {
+			result = new Path();
+			calculatePath(result, width, height);
+			BubblePathCache.put(pathKey, result);
+		}
+		return result;
 	}
 
-	private void calculatePath(Rect outBounds) {
+	private void calculatePath(final Path path, int width, int height) {
 		if (DBG) Log.i(TAG, "calculateBounds, padding: " + padding + ", gravity: " + gravity);
 
-		int left = outBounds.left + padding;
-		int top = outBounds.top + padding;
-		int right = outBounds.right - padding;
-		int bottom = outBounds.bottom - padding;
+		int left = padding;
+		int top = padding;
+		int right = width - padding;
+		int bottom = height - padding;
 
 		final float max_y = bottom - ellipseSize;
 		final float max_x = right - ellipseSize;
@@ -97,6 +149,8 @@ class TooltipTextDrawable extends Drawable {
 		boolean drawPoint = false;
 
 		if (null != point && null != gravity) {
+			// the cached paths are keyed on the requested point, not on the clamped one
+			final Point point = new Point(this.point);
 
 			if (gravity == TooltipManager.Gravity.RIGHT || gravity == TooltipManager.Gravity.LEFT) {
 				if (point.y >= top && point.y <= bottom) {
@@ -125,8 +179,6 @@ class TooltipTextDrawable extends Drawable {
 
 			if (DBG) Log.w(TAG, "point: " + point);
 
-			path.reset();
-
 			// clamp the point..
 			if (point.y < top) point.y = (int) (top);
 			else if (point.y > bottom) point.y = (int) (bottom);
@@ -138,7 +190,7 @@ class TooltipTextDrawable extends Drawable {
 
 			if (drawPoint && gravity == TooltipManager.Gravity.BOTTOM) {
 				path.lineTo(left + point.x - arrowWeight, top);
-				path.lineTo(left + point.x, outBounds.top);
+				path.lineTo(left + point.x, 0);
 				path.lineTo(left + point.x + arrowWeight, top);
 			}
 
@@ -148,7 +200,7 @@ class TooltipTextDrawable extends Drawable {
 
 			if (drawPoint && gravity == TooltipManager.Gravity.LEFT) {
 				path.lineTo(right, top + point.y - arrowWeight);
-				path.lineTo(outBounds.right, top + point.y);
+				path.lineTo(width, top + point.y);
 				path.lineTo(right, top + point.y + arrowWeight);
 			}
 
@@ -158,7 +210,7 @@ class TooltipTextDrawable extends Drawable {
 
 			if (drawPoint && gravity == TooltipManager.Gravity.TOP) {
 				path.lineTo(left + point.x + arrowWeight, bottom);
-				path.lineTo(left + point.x, outBounds.bottom);
+				path.lineTo(left + point.x, height);
 				path.lineTo(left + point.x - arrowWeight, bottom);
 			}
 
@@ -168,7 +220,7 @@ class TooltipTextDrawable extends Drawable {
 
 			if (drawPoint && gravity == TooltipManager.Gravity.RIGHT) {
 				path.lineTo(left, top + point.y + arrowWeight);
-				path.lineTo(outBounds.left, top + point.y);
+				path.lineTo(0, top + point.y);
 				path.lineTo(left, top + point.y - arrowWeight);
 			}
 
@@ -184,6 +236,15 @@ class TooltipTextDrawable extends Drawable {
 
 	@Override
 	public void draw(final Canvas canvas) {
+		final Rect bounds = getBounds();
+		final Path path = getPath();
+
+		if (alpha == 0) {
+			return;
+		}
+
+		final int count = canvas.save();
+		canvas.translate(bounds.left, bounds.top);
 
 		if (null != bgPaint) {
 			canvas.drawPath(path, bgPaint);
@@ -192,35 +253,141 @@ class TooltipTextDrawable extends Drawable {
 		if (null != stPaint) {
 			canvas.drawPath(path, stPaint);
 		}
+
+		canvas.restoreToCount(count);
 	}
 
 	@Override
 	protected void onBoundsChange(final Rect bounds) {
 		if (DBG) Log.i(TAG, "onBoundsChange");
 		super.onBoundsChange(bounds);
-		calculatePath(bounds);
+		invalidatePath();
 	}
 
+	/**
+	 * The path is rebuilt lazily on the next draw
+	 */
+	private void invalidatePath() {
+		pathDirty = true;
+		invalidateSelf();
+	}
+
+	/**
+	 * Modulates the alpha of the fill and stroke colors, no offscreen layer is needed to fade the bubble
+	 */
 	@Override
 	public void setAlpha(final int alpha) {
+		if (this.alpha == alpha) {
+			return;
+		}
+		this.alpha = alpha;
+		copyPaints();
+
+		if (null != bgPaint) {
+			bgPaint.setAlpha(modulateAlpha(Color.alpha(backgroundColor), alpha));
+		}
+		if (null != stPaint) {
+			stPaint.setAlpha(modulateAlpha(Color.alpha(strokeColor), alpha));
+		}
+		invalidateSelf();
+	}
+
+	@Override
+	public int getAlpha() {
+		return alpha;
+	}
+
+	private static int modulateAlpha(int colorAlpha, int alpha) {
+		return colorAlpha * (alpha + (alpha >>> 7)) >>> 8;
 	}
 
 	@Override
 	public void setColorFilter(final ColorFilter cf) {
+		if (null == cf && !paintsCopied) {
+			return;
+		}
+		copyPaints();
+
+		if (null != bgPaint) {
+			bgPaint.setColorFilter(cf);
+		}
+		if (null != stPaint) {
+			stPaint.setColorFilter(cf);
+		}
+		invalidateSelf();
+	}
+
+	/**
+	 * @return the elevation of the bubble, in pixels
+	 */
+	public float getElevation() {
+		return elevation;
+	}
+
+	/**
+	 * Publishes the bubble shape, so that the elevation shadow follows it. The outline
+	 * must be convex: the arrow is left out and the rounded rect of the bubble body is
+	 * used when the arrow makes the path concave.
+	 */
+	@TargetApi (Build.VERSION_CODES.LOLLIPOP)
+	@Override
+	public void getOutline(final Outline outline) {
+		if (null == bgPaint) {
+			super.getOutline(outline);
+			return;
+		}
+
+		final Rect bounds = getBounds();
+		final Path path = getPath();
+
+		if (path.isConvex()) {
+			if (bounds.left == 0 && bounds.top == 0) {
+				outline.setConvexPath(path);
+			}
+			else {
+				if (null == outlinePath) {
+					outlinePath = new Path();
+				}
+				outlinePath.set(path);
+				outlinePath.offset(bounds.left, bounds.top);
+				outline.setConvexPath(outlinePath);
+			}
+		}
+		else {
+			outline.setRoundRect(
+				bounds.left + padding, bounds.top + padding, bounds.right - padding, bounds.bottom - padding, ellipseSize);
+		}
+		outline.setAlpha(modulateAlpha(Color.alpha(backgroundColor), alpha) / 255f);
 	}
 
 	@Override
 	public int getOpacity() {
-		return 0;
+		if (alpha == 0 || (null == bgPaint && null == stPaint)) {
+			return PixelFormat.TRANSPARENT;
+		}
+		return PixelFormat.TRANSLUCENT;
 	}
 
 	public void setDestinationPoint(final Point point) {
-		this.point = new Point(point);
+		if (null == this.point) {
+			this.point = new Point(point);
+		}
+		else if (this.point.equals(point.x, point.y)) {
+			return;
+		}
+		else {
+			this.point.set(point.x, point.y);
+		}
+		invalidatePath();
 	}
 
 	public void setAnchor(final TooltipManager.Gravity gravity, int padding) {
+		if (this.gravity == gravity && this.padding == padding) {
+			return;
+		}
 		this.gravity = gravity;
 		this.padding = padding;
 		this.arrowWeight = (int) ((float) padding / arrowRatio);
+		invalidatePath();
 	}
 }
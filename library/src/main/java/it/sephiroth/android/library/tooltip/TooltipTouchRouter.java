@@ -0,0 +1,151 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import java.util.ArrayList;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
+
+/**
+ * Single view receiving the touch events on behalf of all the tooltips of a manager.<br />
+ * The tooltips themselves never take part in the touch dispatch. On every touch down the
+ * router checks the bubbles in the {@link TooltipObstacles} index: when no tooltip is
+ * hit and none of them reacts to touches outside of its bubble the event goes through
+ * right away, otherwise the {@link TooltipManager.ClosePolicy} of every tooltip is
+ * applied in one pass, from the top most one.
+ */
+final class TooltipTouchRouter extends View {
+    private static final String TAG = "TooltipTouchRouter";
+
+    private final TooltipObstacles mObstacles;
+
+    // in attach order, the last one is the top most
+    private final ArrayList<TooltipView> mTooltips = new ArrayList<TooltipView>();
+
+    // tooltips closing on touches outside of the bubble
+    private int mOutsideCount;
+
+    // tooltips consuming every touch, see TooltipView#isTouchBlocking()
+    private int mBlockingCount;
+
+    private boolean mConsuming;
+
+    // tooltip whose content view handles the current gesture
+    private TooltipView mTarget;
+
+    TooltipTouchRouter(final Context context, final TooltipObstacles obstacles) {
+        super(context);
+        mObstacles = obstacles;
+        setWillNotDraw(true);
+    }
+
+    void add(TooltipView layout, ViewGroup decor) {
+        if (mTooltips.contains(layout)) return;
+
+        mTooltips.add(layout);
+        if (layout.isClosingOnTouchOutside()) {
+            mOutsideCount++;
+        }
+        layout.setTouchRouter(this);
+
+        if (null == getParent()) {
+            if (DBG) Log.v(TAG, "attach");
+            decor.addView(this, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        }
+    }
+
+    void remove(TooltipView layout) {
+        if (!mTooltips.remove(layout)) return;
+
+        if (layout.isClosingOnTouchOutside()) {
+            mOutsideCount--;
+        }
+        layout.setTouchRouter(null);
+        if (mTarget == layout) {
+            mTarget = null;
+        }
+
+        if (mTooltips.isEmpty()) {
+            detach();
+        }
+    }
+
+    void clear() {
+        for (TooltipView layout : mTooltips) {
+            layout.setTouchRouter(null);
+        }
+        mTooltips.clear();
+        mOutsideCount = 0;
+        mBlockingCount = 0;
+        detach();
+    }
+
+    private void detach() {
+        mConsuming = false;
+        mTarget = null;
+        ViewParent parent = getParent();
+        if (null != parent) {
+            if (DBG) Log.v(TAG, "detach");
+            ((ViewGroup) parent).removeView(this);
+        }
+    }
+
+    /**
+     * Called by the tooltips when their {@link TooltipView#isTouchBlocking()} state changes,
+     * or when they join or leave the router while blocking
+     */
+    void onTouchBlockingChanged(boolean blocking) {
+        mBlockingCount += blocking ? 1 : -1;
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(final MotionEvent event) {
+        final int action = event.getActionMasked();
+
+        if (action != MotionEvent.ACTION_DOWN) {
+            // the rest of a gesture goes to whoever got its down event
+            boolean result = mConsuming;
+            if (null != mTarget) {
+                mTarget.dispatchRoutedTouch(event);
+            }
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                mConsuming = false;
+                mTarget = null;
+            }
+            return result;
+        }
+
+        mConsuming = false;
+        mTarget = null;
+
+        final int x = (int) event.getX();
+        final int y = (int) event.getY();
+
+        if (mBlockingCount == 0 && mOutsideCount == 0 && !mObstacles.hitBubble(x, y)) {
+            return false;
+        }
+
+        for (int i = mTooltips.size() - 1; i >= 0; i--) {
+            // closing a tooltip can remove others from the list, e.g. a whole group
+            if (i >= mTooltips.size()) continue;
+
+            final TooltipView layout = mTooltips.get(i);
+            final int result = layout.onRoutedTouchDown(event);
+            if (result != TooltipView.TOUCH_IGNORED) {
+                mConsuming = true;
+                if (result == TooltipView.TOUCH_CONTENT) {
+                    mTarget = layout;
+                }
+                break;
+            }
+        }
+
+        if (DBG) Log.v(TAG, "touch down: " + x + ", " + y + ", consumed: " + mConsuming);
+        return mConsuming;
+    }
+}
@@ -1,26 +1,16 @@
 package it.sephiroth.android.library.tooltip;
 
-import android.animation.Animator;
-import android.animation.AnimatorInflater;
 import android.app.Activity;
 import android.content.Context;
-import android.content.res.TypedArray;
-import android.graphics.Color;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
-import android.graphics.drawable.TransitionDrawable;
 import android.os.Build;
-import android.text.Html;
+import android.os.SystemClock;
 import android.util.Log;
-import android.util.TypedValue;
 import android.view.*;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 
 import static it.sephiroth.android.library.tooltip.TooltipManager.ClosePolicy;
 import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
@@ -28,58 +18,96 @@ import static it.sephiroth.android.library.tooltip.TooltipManager.DBG;
 class TooltipView extends ViewGroup implements Tooltip {
 
     private static final String TAG = "ToolTipLayout";
-    private final long showDelay;
+    private long showDelay;
 
     private boolean mAttached;
     private boolean mInitialized;
     private boolean mActivated;
 
-    private final int toolTipId;
+    private int toolTipId;
     private final Rect viewRect;
     private final Rect drawRect;
     private final Rect tempRect;
-
-    private final long showDuration;
-    private final ClosePolicy closePolicy;
-    private final View targetView;
-    private final Point point;
-    private final int textResId;
-    private final int textStyleResId;
-    private final int topRule;
-    private final int maxWidth;
-    private final boolean hideArrow;
+    private final Rect screenRect;
+    private final Rect anchorRect;
+    private boolean mPlaced;
+    private boolean trackAnchor;
+    private AdapterAnchor adapterAnchor;
+    private boolean mAnchorHidden;
+    private boolean mPlacementPending;
+    private ContentPreparer.Request mPreparation;
+
+    private long showDuration;
+    private ClosePolicy closePolicy;
+    private View targetView;
+    private Point point;
+    private final Point anchorPoint;
+    private final Point destinationPoint;
+    private final PlacementSolver mSolver;
+    private final int[] mPlacementKey;
+    private int textResId;
+    private int textStyleResId;
+    private int topRule;
+    private int maxWidth;
+    private boolean hideArrow;
     private int padding;
-    private final long activateDelay;
-    private final boolean restrict;
-    private final long animationDuration;
-    private final TooltipManager.onTooltipClosingCallback closeCallback;
-    private final int inAnimation;
-    private final int outAnimation;
-    private final int backgroundColorResId;
-    private final boolean centerHorizontally;
+    private long activateDelay;
+    private boolean restrict;
+    private long animationDuration;
+    private TooltipManager.onTooltipClosingCallback closeCallback;
+    private int inAnimation;
+    private int outAnimation;
+    private boolean centerHorizontally;
+    private TooltipGroup group;
+    private long requestTime;
 
     private CharSequence text;
     TooltipManager.Gravity gravity;
 
     private View mView;
     private TextView mTextView;
-    private final TooltipTextDrawable mDrawable;
-    private TransitionDrawable mBackgroundTransitionDrawable;
+    private TooltipTextDrawable mDrawable;
+    // kept across the pool recycles, mDrawable is null for custom views
+    private TooltipTextDrawable mTextDrawable;
+    private final TooltipBackgroundDrawable mBackgroundDrawable;
+    private final BackgroundFade mBackgroundFade;
+
+    // state of the content view before it was bound to this tooltip
+    private Drawable mViewBackground;
+    private final Rect mViewPadding;
+    private int mViewMaxWidth;
+    private float mViewElevation;
 
     public TooltipView(Context context, TooltipManager.Builder builder) {
         super(context);
 
-        TypedArray theme = context.getTheme().obtainStyledAttributes(null, R.styleable.TooltipLayout, builder.defStyleAttr, builder.defStyleRes);
-        this.padding = theme.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_padding, 30);
-        theme.recycle();
+        this.viewRect = new Rect();
+        this.drawRect = new Rect();
+        this.tempRect = new Rect();
+        this.screenRect = new Rect();
+        this.anchorRect = new Rect();
+        this.anchorPoint = new Point();
+        this.destinationPoint = new Point();
+        this.mSolver = new PlacementSolver();
+        this.mPlacementKey = new int[PlacementCache.KEY_SIZE];
+        this.mViewPadding = new Rect();
+
+        mBackgroundDrawable = new TooltipBackgroundDrawable(context, builder);
+        mBackgroundFade = new BackgroundFade(mBackgroundDrawable);
+
+        bind(builder);
+    }
 
-        TypedValue value = new TypedValue();
-        boolean found = context.getTheme().resolveAttribute(R.attr.ttlm_defaultTextStyle, value, true);
-        if (found) {
-            textStyleResId = value.resourceId;
-        } else {
-            textStyleResId = R.style.ToolTipTextDefaultStyle;
-        }
+    /**
+     * Binds this container to a new tooltip. Used both on creation and when the
+     * container is reused from the {@link TooltipPool}
+     */
+    void bind(TooltipManager.Builder builder) {
+        final Context context = getContext();
+
+        final TooltipStyle style = TooltipStyle.obtain(context, builder.defStyleAttr, builder.defStyleRes);
+        this.padding = style.padding;
+        this.textStyleResId = style.textAppearance;
 
         this.toolTipId = builder.id;
         this.text = builder.text;
@@ -98,44 +126,167 @@ class TooltipView extends ViewGroup implements Tooltip {
         this.closeCallback = builder.closeCallback;
         this.inAnimation = builder.inAnimation;
         this.outAnimation = builder.outAnimation;
-        this.backgroundColorResId = builder.backgroundColorResId;
         this.centerHorizontally = builder.centerHorizontally;
-
-        mBackgroundTransitionDrawable = new TransitionDrawable(new Drawable[] {
-                new ColorDrawable(Color.TRANSPARENT),
-                new TooltipBackgroundDrawable(context, builder)});
+        this.group = builder.group;
+        this.requestTime = builder.requestTime;
+        this.trackAnchor = builder.trackAnchor;
+        this.adapterAnchor = builder.adapterAnchor;
+        this.mAnchorHidden = false;
+
+        // tooltips in a group share the group's background,
+        // a transparent background is not drawn at all
+        final Drawable background;
+        mBackgroundDrawable.setup(context, builder);
+        mBackgroundFade.jumpTo(false);
+        if (null == group && !mBackgroundDrawable.isTransparent()) {
+            background = mBackgroundDrawable;
+        } else {
+            background = null;
+        }
 
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
             //noinspection deprecation
-            setBackgroundDrawable(mBackgroundTransitionDrawable);
+            setBackgroundDrawable(background);
         } else {
-            setBackground(mBackgroundTransitionDrawable);
+            setBackground(background);
         }
 
         if (null != builder.point) {
-            this.point = new Point(builder.point);
-            this.point.y += topRule;
+            this.point = anchorPoint;
+            this.point.set(builder.point.x, builder.point.y + topRule);
         } else {
             this.point = null;
         }
 
-        this.viewRect = new Rect();
-        this.drawRect = new Rect();
-        this.tempRect = new Rect();
-
         if (!builder.isCustomView) {
-            this.mDrawable = new TooltipTextDrawable(context, builder);
+            if (null == mTextDrawable) {
+                mTextDrawable = new TooltipTextDrawable(context, builder);
+            } else {
+                mTextDrawable.setup(context, builder);
+            }
+            this.mDrawable = mTextDrawable;
         } else {
             this.mDrawable = null;
         }
 
+        setTranslationX(0);
+        setTranslationY(0);
         setVisibility(INVISIBLE);
     }
 
+    /**
+     * Hands the background of this tooltip over to the overlay hosting it, which draws
+     * the backgrounds of all its tooltips merged into one. Called once added to the overlay.
+     */
+    void setSharedBackground(TooltipOverlay overlay) {
+        if (getBackground() != mBackgroundDrawable) return;
+
+        mBackgroundDrawable.detachHighlights();
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            //noinspection deprecation
+            setBackgroundDrawable(null);
+        } else {
+            setBackground(null);
+        }
+
+        mSharedBackground = overlay;
+        overlay.addBackground(this, mBackgroundDrawable);
+    }
+
+    /**
+     * Resets the container once it has been removed from its parent so
+     * that it can be bound again to another tooltip.
+     *
+     * @param pool the content view, if reusable, is released into this pool
+     */
+    void recycle(TooltipPool pool) {
+        if (DBG) Log.i(TAG, "recycle: " + toolTipId);
+
+        cancelPending();
+        mAnimator.reset();
+        setAnimationLayer(false);
+
+        if (null != mView) {
+            final View view = mView;
+            removeViewInLayout(view);
+
+            if (restoreContentView(view)) {
+                pool.releaseContentView(textResId, view);
+            }
+        }
+
+        if (null != mSharedBackground) {
+            mSharedBackground.removeBackground(this);
+            mSharedBackground = null;
+        }
+        mBackgroundDrawable.release();
+
+        mView = null;
+        mTextView = null;
+        mDrawable = null;
+        mRemoveOnHide = false;
+        mInitialized = false;
+        mPlaced = false;
+        mPlacementPending = false;
+        mActivated = false;
+        mShowing = false;
+        closeListener = null;
+        tooltipListener = null;
+        closeCallback = null;
+        targetView = null;
+        adapterAnchor = null;
+        group = null;
+        mObstacles = null;
+        mTimers = null;
+        mPlacementCache = null;
+        text = null;
+    }
+
+    /**
+     * Restores the content view to its inflated state.
+     *
+     * @return false if the view cannot be restored and must not be reused
+     */
+    private boolean restoreContentView(View view) {
+        view.setTranslationX(0);
+        view.setTranslationY(0);
+        view.setAlpha(1);
+        view.setScaleX(1);
+        view.setScaleY(1);
+        view.setRotation(0);
+
+        if (null != mDrawable) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+                //noinspection deprecation
+                view.setBackgroundDrawable(mViewBackground);
+            } else {
+                view.setBackground(mViewBackground);
+            }
+            view.setPadding(mViewPadding.left, mViewPadding.top, mViewPadding.right, mViewPadding.bottom);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                view.setElevation(mViewElevation);
+            }
+        }
+        mViewBackground = null;
+
+        if (null != mTextView && maxWidth > -1) {
+            if (mViewMaxWidth < 0) {
+                // the original max width is unknown on this platform
+                return false;
+            }
+            mTextView.setMaxWidth(mViewMaxWidth);
+        }
+        return true;
+    }
+
     int getTooltipId() {
         return toolTipId;
     }
 
+    TooltipGroup getGroup() {
+        return group;
+    }
+
     @Override
     public void show() {
         if (DBG) Log.i(TAG, "show");
@@ -144,12 +295,7 @@ class TooltipView extends ViewGroup implements Tooltip {
             return;
         }
 
-        postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                animateIn();
-            }
-        }, showDelay);
+        mTimers.schedule(mShowTimer, showDelay);
     }
 
     @Override
@@ -159,80 +305,137 @@ class TooltipView extends ViewGroup implements Tooltip {
         animateOut(remove);
     }
 
-    Animator mAnimation;
     boolean mShowing;
+    private boolean mRemoveOnHide;
+    private TooltipTouchRouter mTouchRouter;
+    // overlay drawing the background of this tooltip merged with the others
+    private TooltipOverlay mSharedBackground;
+    private boolean mTouchBlocking;
+    private boolean mLayerEnabled;
+    private int mViewLayerType;
+
+    private final TooltipAnimator mAnimator = new TooltipAnimator(new TooltipAnimator.Callback() {
+        @Override
+        public void onAnimationStarted(final boolean in) {
+            if (in && !mAnchorHidden) {
+                setVisibility(VISIBLE);
+            }
+            setAnimationLayer(true);
+            startAnimationMetrics();
+            updateTouchBlocking();
+        }
 
-    protected void animateIn() {
-        if (mShowing) return;
+        @Override
+        public void onAnimationReversed(final boolean in) {
+            if (in && !mAnchorHidden) {
+                setVisibility(VISIBLE);
+            }
+            cancelAnimationMetrics();
+            startAnimationMetrics();
+        }
 
-        if (null != mAnimation) {
-            mAnimation.cancel();
+        @Override
+        public void onAnimationFinished(final boolean in) {
+            if (DBG) Log.i(TAG, "onAnimationFinished, in: " + in);
+            setAnimationLayer(false);
+            stopAnimationMetrics(in);
+            updateTouchBlocking();
+
+            if (in) {
+                if (null != tooltipListener) {
+                    tooltipListener.onShowCompleted(TooltipView.this);
+                    postActivate(activateDelay);
+                    reportShown();
+                }
+            } else {
+                if (mRemoveOnHide) {
+                    fireOnHideCompleted();
+                }
+                setVisibility(INVISIBLE);
+            }
         }
 
+        @Override
+        public void onAnimationInterrupted() {
+            setAnimationLayer(false);
+            cancelAnimationMetrics();
+            updateTouchBlocking();
+        }
+    });
+
+    /**
+     * The content view is rendered into a hardware layer only while it animates,
+     * so the bubble is not rasterized again on every frame of the fade
+     */
+    private void setAnimationLayer(boolean enabled) {
+        if (null == mView || enabled == mLayerEnabled) return;
+        mLayerEnabled = enabled;
+
+        if (enabled) {
+            mViewLayerType = mView.getLayerType();
+            if (mViewLayerType != LAYER_TYPE_HARDWARE) {
+                mView.setLayerType(LAYER_TYPE_HARDWARE, null);
+                if (null != mView.getWindowToken()) {
+                    mView.buildLayer();
+                }
+            }
+        } else if (mViewLayerType != LAYER_TYPE_HARDWARE) {
+            mView.setLayerType(mViewLayerType, null);
+        }
+    }
+
+    protected void animateIn() {
+        if (mShowing) return;
+
         if (DBG) Log.i(TAG, "animateIn");
 
         mShowing = true;
 
         if (animationDuration > 0 && inAnimation > 0) {
+            mAnimator.animateIn(getContext(), mView, inAnimation, animationDuration);
 
-            mAnimation = AnimatorInflater.loadAnimator(getContext(), inAnimation);
-            mAnimation.setTarget(mView);
-            mAnimation.setDuration(animationDuration);
-
-            mAnimation.addListener(new Animator.AnimatorListener() {
-                private boolean cancelled;
-
-                @Override
-                public void onAnimationStart(Animator animation) {
-                    setVisibility(VISIBLE);
-                    cancelled = false;
-                }
-
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    if (DBG) Log.i(TAG, "animateIn::onAnimationEnd, cancelled: " + cancelled);
-                    if (null != tooltipListener && !cancelled) {
-                        tooltipListener.onShowCompleted(TooltipView.this);
-                        postActivate(activateDelay);
-                    }
-                }
-
-                @Override
-                public void onAnimationCancel(Animator animation) {
-                    cancelled = true;
-                }
-
-                @Override
-                public void onAnimationRepeat(Animator animation) {
-                }
-            });
-            mAnimation.start();
-
-            if (mBackgroundTransitionDrawable != null) {
-                mBackgroundTransitionDrawable.startTransition((int) animationDuration);
+            if (null != getBackground()) {
+                mBackgroundFade.fadeIn(animationDuration);
+            }
+            if (null != mSharedBackground) {
+                mSharedBackground.setBackgroundShown(this, true, animationDuration);
             }
         } else {
-            setVisibility(VISIBLE);
-            if (backgroundColorResId > 0) {
-                setBackgroundColor(getContext().getResources().getColor(backgroundColorResId));
+            mAnimator.jumpTo(true);
+            if (!mAnchorHidden) {
+                setVisibility(VISIBLE);
+            }
+            mBackgroundFade.jumpTo(true);
+            if (null != mSharedBackground) {
+                mSharedBackground.setBackgroundShown(this, true, 0);
             }
             tooltipListener.onShowCompleted(TooltipView.this);
             if (!mActivated) {
                 postActivate(activateDelay);
             }
+            reportShown();
         }
+        updateTouchBlocking();
 
         if (showDuration > 0) {
-            getHandler().removeCallbacks(hideRunnable);
-            getHandler().postDelayed(hideRunnable, showDuration);
+            mTimers.schedule(mHideTimer, showDuration);
         }
     }
 
+    Runnable showRunnable = new Runnable() {
+        @Override
+        public void run() {
+            initializeView();
+            animateIn();
+        }
+    };
+
     Runnable activateRunnable = new Runnable() {
         @Override
         public void run() {
             if (DBG) Log.v(TAG, "activated..");
             mActivated = true;
+            updateTouchBlocking();
         }
     };
 
@@ -243,6 +446,10 @@ class TooltipView extends ViewGroup implements Tooltip {
         }
     };
 
+    private final TimerWheel.Timer mShowTimer = new TimerWheel.Timer(showRunnable);
+    private final TimerWheel.Timer mActivateTimer = new TimerWheel.Timer(activateRunnable);
+    private final TimerWheel.Timer mHideTimer = new TimerWheel.Timer(hideRunnable);
+
     boolean isShowing() {
         return mShowing;
     }
@@ -251,10 +458,11 @@ class TooltipView extends ViewGroup implements Tooltip {
         if (DBG) Log.i(TAG, "postActivate: " + ms);
         if (ms > 0) {
             if (isAttached()) {
-                postDelayed(activateRunnable, ms);
+                mTimers.schedule(mActivateTimer, ms);
             }
         } else {
             mActivated = true;
+            updateTouchBlocking();
         }
     }
 
@@ -262,72 +470,88 @@ class TooltipView extends ViewGroup implements Tooltip {
         if (DBG) Log.i(TAG, "removeFromParent: " + toolTipId);
         ViewParent parent = getParent();
         if (null != parent) {
-            if (null != getHandler()) {
-                getHandler().removeCallbacks(hideRunnable);
-            }
+            cancelPending();
             ((ViewGroup) parent).removeView(TooltipView.this);
+        }
+    }
 
-            if (null != mAnimation && mAnimation.isStarted()) {
-                mAnimation.cancel();
-            }
+    /**
+     * Cancels the pending show, activate and hide callbacks and the running animation
+     */
+    void cancelPending() {
+        if (null != mPreparation) {
+            mPreparation.cancel();
+            mPreparation = null;
+        }
+        if (null != mTimers) {
+            mTimers.cancel(mShowTimer);
+            mTimers.cancel(mActivateTimer);
+            mTimers.cancel(mHideTimer);
         }
+
+        mAnimator.cancel();
     }
 
     protected void animateOut(final boolean remove) {
         if (!isAttached() || !mShowing) return;
         if (DBG) Log.i(TAG, "animateOut");
 
-        if (null != mAnimation) {
-            mAnimation.cancel();
-        }
-
         mShowing = false;
+        mRemoveOnHide = remove;
 
         if (animationDuration > 0 && outAnimation != 0) {
+            mAnimator.animateOut(getContext(), mView, outAnimation);
 
-            mAnimation = AnimatorInflater.loadAnimator(getContext(), outAnimation);
-            mAnimation.setTarget(mView);
-            mAnimation.addListener(new Animator.AnimatorListener() {
-                private boolean cancelled;
-
-                @Override
-                public void onAnimationStart(Animator animation) {
-                    cancelled = false;
-                }
-
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    if (DBG) Log.i(TAG, "animateOut::onAnimationEnd, cancelled: " + cancelled);
-                    if (cancelled) return;
-
-                    if (remove) {
-                        fireOnHideCompleted();
-                    }
-                    setVisibility(INVISIBLE);
-                    mAnimation = null;
-                }
-
-                @Override
-                public void onAnimationCancel(Animator animation) {
-                    cancelled = true;
-                }
-
-                @Override
-                public void onAnimationRepeat(Animator animation) {
-                }
-            });
-            mAnimation.start();
-
-            if (mBackgroundTransitionDrawable != null) {
-                mBackgroundTransitionDrawable.reverseTransition((int) animationDuration);
+            if (null != getBackground()) {
+                mBackgroundFade.fadeOut(animationDuration);
+            }
+            if (null != mSharedBackground) {
+                mSharedBackground.setBackgroundShown(this, false, animationDuration);
             }
         } else {
+            mAnimator.jumpTo(false);
             setVisibility(INVISIBLE);
-            setBackgroundColor(Color.TRANSPARENT);
+            mBackgroundFade.jumpTo(false);
+            if (null != mSharedBackground) {
+                mSharedBackground.setBackgroundShown(this, false, 0);
+            }
             if (remove) {
                 fireOnHideCompleted();
             }
         }
+        updateTouchBlocking();
+    }
+
+    private void startAnimationMetrics() {
+        if (null == mMetrics) return;
+
+        if (null == mFrameCounter) {
+            float refreshRate = ((Activity) getContext()).getWindowManager().getDefaultDisplay().getRefreshRate();
+            mFrameCounter = new DroppedFrameCounter(refreshRate);
+        }
+        mAnimationStartTime = SystemClock.uptimeMillis();
+        mFrameCounter.start();
+    }
+
+    private void stopAnimationMetrics(boolean in) {
+        if (null == mMetrics || mAnimationStartTime == 0) return;
+
+        final int droppedFrames = mFrameCounter.stop();
+        mMetrics.onAnimation(toolTipId, in, SystemClock.uptimeMillis() - mAnimationStartTime, droppedFrames);
+        mAnimationStartTime = 0;
+    }
+
+    private void cancelAnimationMetrics() {
+        if (null != mFrameCounter) {
+            mFrameCounter.stop();
+        }
+        mAnimationStartTime = 0;
+    }
+
+    private void reportShown() {
+        if (null != mMetrics && requestTime > 0) {
+            mMetrics.onShown(toolTipId, SystemClock.uptimeMillis() - requestTime);
+        }
     }
 
     private void fireOnHideCompleted() {
@@ -340,6 +564,8 @@ class TooltipView extends ViewGroup implements Tooltip {
     protected void onLayout(final boolean changed, final int l, final int t, final int r, final int b) {
         if (DBG) Log.i(TAG, "onLayout, changed: " + changed + ", " + l + ", " + t + ", " + r + ", " + b);
 
+        final long start = null != mMetrics ? System.nanoTime() : 0;
+
         //  The layout has actually already been performed and the positions
         //  cached.  Apply the cached values to the children.
         final int count = getChildCount();
@@ -351,27 +577,141 @@ class TooltipView extends ViewGroup implements Tooltip {
             }
         }
 
-        if (changed) {
+        if (changed || mPlacementPending) {
+            mPlacementPending = false;
+            solvePosition();
+        }
+
+        if (null != mMetrics) {
+            mMetrics.onMeasureLayout(toolTipId, mMeasureNanos, System.nanoTime() - start);
+        }
+    }
+
+    private void solvePosition() {
+        if (null == mView) {
+            // content not initialized yet
+            return;
+        }
+
+        if (null != adapterAnchor) {
+            targetView = adapterAnchor.resolve();
+            if (null == targetView) {
+                setAnchorHidden(true);
+                return;
+            }
+        }
+
+        mPlaced = false;
+        calculatePositions();
+    }
+
+    /**
+     * Starts inflating the content view in background, to be used once the show delay
+     * expires. Must be called before the tooltip is attached.
+     */
+    void prepareContent() {
+        if (null == mPreparation && !mInitialized) {
+            // the padding initializeView() applies around the bubble content
+            final int contentPadding = null != mDrawable ? (hideArrow ? padding / 2 : padding) : -1;
+            mPreparation = ContentPreparer.prepare(getContext(), textResId, text, textStyleResId, maxWidth, contentPadding);
+        }
+    }
+
+    /**
+     * Solves the placement again, e.g. after the obstacles changed
+     */
+    void requestPlacement() {
+        if (!mAttached || null == mView || mAnchorHidden) return;
+        solvePosition();
+    }
+
+    /**
+     * Follows the anchor view if it moved since the last placement. The move is applied as
+     * a translation of the bubble only, the placement is solved again only when the
+     * bubble does not fit anymore with the current gravity.
+     *
+     * @return true if the bubble moved
+     */
+    boolean trackAnchor() {
+        if (!mAttached || null == mView) return false;
+
+        if (null != adapterAnchor) {
+            final View view = adapterAnchor.resolve();
+
+            if (null == view) {
+                // the row scrolled off screen
+                setAnchorHidden(true);
+                return false;
+            }
+
+            if (mAnchorHidden || !mPlaced || view != targetView) {
+                // the row is back, possibly bound to a different view
+                if (DBG) Log.v(TAG, "trackAnchor: anchor view changed");
+                targetView = view;
+                setAnchorHidden(false);
+                solvePosition();
+                return true;
+            }
+        }
+
+        if (!mPlaced || null == targetView) return false;
+
+        if (!targetView.getGlobalVisibleRect(anchorRect) || anchorRect.equals(viewRect)) {
+            return false;
+        }
+
+        final int dx = anchorRect.centerX() - viewRect.centerX();
+        final int dy = anchorRect.centerY() - viewRect.centerY();
 
-            List<TooltipManager.Gravity> gravities = new ArrayList<TooltipManager.Gravity>(
-                    Arrays.asList(
-                            TooltipManager.Gravity.LEFT,
-                            TooltipManager.Gravity.RIGHT,
-                            TooltipManager.Gravity.TOP,
-                            TooltipManager.Gravity.BOTTOM,
-                            TooltipManager.Gravity.CENTER
-                    )
-            );
+        tempRect.set(drawRect);
+        tempRect.offset(dx, dy);
 
-            gravities.remove(gravity);
-            gravities.add(0, gravity);
-            calculatePositions(gravities);
+        if (anchorRect.width() != viewRect.width()
+                || anchorRect.height() != viewRect.height()
+                || (centerHorizontally && dx != 0)
+                || (restrict && !screenRect.contains(tempRect))
+                || (null != mObstacles && mObstacles.intersects(this, tempRect.left, tempRect.top, tempRect.right, tempRect.bottom))) {
+            if (DBG) Log.v(TAG, "trackAnchor: solve again");
+            solvePosition();
+            return true;
+        }
+
+        viewRect.set(anchorRect);
+        drawRect.set(tempRect);
+        if (null != mObstacles) {
+            mObstacles.setBubble(this, drawRect.left, drawRect.top, drawRect.right, drawRect.bottom);
+        }
+        mView.setTranslationX(drawRect.left);
+        mView.setTranslationY(drawRect.top);
+        return true;
+    }
+
+    boolean isTrackingAnchor() {
+        return (trackAnchor && null != targetView) || null != adapterAnchor;
+    }
+
+    /**
+     * Hides the tooltip without animations while its adapter anchor is not visible
+     */
+    private void setAnchorHidden(boolean hidden) {
+        mAnchorHidden = hidden;
+        if (hidden) {
+            if (getVisibility() == VISIBLE) {
+                setVisibility(INVISIBLE);
+            }
+            // a hidden bubble must not push the others away, it is added back once placed again
+            if (null != mObstacles) {
+                mObstacles.removeBubble(this);
+            }
+        } else if (mShowing && getVisibility() != VISIBLE) {
+            setVisibility(VISIBLE);
         }
     }
 
     @Override
     protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
         if (DBG) Log.i(TAG, "onMeasure");
+        final long start = null != mMetrics ? System.nanoTime() : 0;
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 
         int myWidth = -1;
@@ -408,6 +748,10 @@ class TooltipView extends ViewGroup implements Tooltip {
         }
 
         setMeasuredDimension(myWidth, myHeight);
+
+        if (null != mMetrics) {
+            mMeasureNanos = System.nanoTime() - start;
+        }
     }
 
     @Override
@@ -415,8 +759,17 @@ class TooltipView extends ViewGroup implements Tooltip {
         if (DBG) Log.i(TAG, "onAttachedToWindow");
         super.onAttachedToWindow();
         mAttached = true;
+        updateTouchBlocking();
+
+        if (getBackground() == mBackgroundDrawable) {
+            mBackgroundDrawable.attachHighlights();
+        }
 
-        initializeView();
+        // with a content view being prepared in background
+        // the initialization waits for the show delay
+        if (null == mPreparation) {
+            initializeView();
+        }
     }
 
     @Override
@@ -424,6 +777,8 @@ class TooltipView extends ViewGroup implements Tooltip {
         if (DBG) Log.i(TAG, "onDetachedFromWindow");
         super.onDetachedFromWindow();
         mAttached = false;
+        mBackgroundDrawable.detachHighlights();
+        updateTouchBlocking();
     }
 
     private void initializeView() {
@@ -431,12 +786,34 @@ class TooltipView extends ViewGroup implements Tooltip {
         mInitialized = true;
 
         if (DBG) Log.i(TAG, "initializeView");
+        final long start = null != mMetrics ? System.nanoTime() : 0;
 
         LayoutParams params = new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
 
-        mView = LayoutInflater.from(getContext()).inflate(textResId, this, false);
+        mView = null;
+        ContentPreparer.Request preparation = mPreparation;
+        mPreparation = null;
+        if (null != preparation) {
+            mView = preparation.take();
+        }
+
+        final boolean prepared = null != mView;
+        final TooltipPool pool = getPool();
+        if (null == mView && null != pool) {
+            mView = pool.acquireContentView(textResId);
+        }
+        if (null == mView) {
+            mView = LayoutInflater.from(getContext()).inflate(textResId, this, false);
+        }
 
         if (null != mDrawable) {
+            mViewBackground = mView.getBackground();
+            if (prepared) {
+                // the worker already applied the padding of the tooltip
+                mViewPadding.set(preparation.layoutPadding);
+            } else {
+                mViewPadding.set(mView.getPaddingLeft(), mView.getPaddingTop(), mView.getPaddingRight(), mView.getPaddingBottom());
+            }
 
             if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
                 //noinspection deprecation
@@ -450,41 +827,51 @@ class TooltipView extends ViewGroup implements Tooltip {
             } else {
                 mView.setPadding(padding, padding, padding, padding);
             }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                mViewElevation = mView.getElevation();
+                mView.setElevation(mDrawable.getElevation());
+            }
         }
 
         mTextView = (TextView) mView.findViewById(android.R.id.text1);
         if (mTextView != null) {
-            mTextView.setTextAppearance(getContext(), textStyleResId);
-            mTextView.setText(Html.fromHtml((String) this.text));
+            if (!prepared) {
+                mTextView.setTextAppearance(getContext(), textStyleResId);
+                mTextView.setText(HtmlCache.fromHtml(this.text));
+            } else if (preparation.text != this.text) {
+                // text changed while the view was being prepared
+                mTextView.setText(HtmlCache.fromHtml(this.text));
+            }
             if (maxWidth > -1) {
+                if (prepared) {
+                    mViewMaxWidth = preparation.layoutMaxWidth;
+                } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                    mViewMaxWidth = mTextView.getMaxWidth();
+                } else {
+                    mViewMaxWidth = -1;
+                }
                 mTextView.setMaxWidth(maxWidth);
             }
         }
 
         this.addView(mView, params);
-    }
 
-    private void calculatePositions(List<TooltipManager.Gravity> gravities) {
-        if (!isAttached()) return;
-
-        // failed to display the tooltip due to
-        // something wrong with its dimensions or
-        // the target position..
-        if (gravities.size() < 1) {
-            if (null != tooltipListener) {
-                tooltipListener.onShowFailed(this);
-            }
-            setVisibility(GONE);
-            return;
+        if (null != preparation) {
+            // the container has already been laid out, place the content on the next pass
+            mPlacementPending = true;
         }
 
-        TooltipManager.Gravity gravity = gravities.get(0);
+        if (null != mMetrics) {
+            mMetrics.onInflate(toolTipId, System.nanoTime() - start);
+        }
+    }
 
-        if (DBG) Log.i(TAG, "calculatePositions: " + gravity + ", gravities: " + gravities.size());
+    private void calculatePositions() {
+        if (!isAttached()) return;
 
-        gravities.remove(0);
+        if (DBG) Log.i(TAG, "calculatePositions: " + gravity);
 
-        Rect screenRect = new Rect();
         Window window = ((Activity) getContext()).getWindow();
         window.getDecorView().getWindowVisibleDisplayFrame(screenRect);
 
@@ -503,132 +890,82 @@ class TooltipView extends ViewGroup implements Tooltip {
             viewRect.set(point.x, point.y + statusbarHeight, point.x, point.y + statusbarHeight);
         }
 
-        int width = mView.getMeasuredWidth();
-        int height = mView.getMeasuredHeight();
-
-        // get the destination point
-        Point point = new Point();
-
-        //@formatter:off
-        if (gravity == TooltipManager.Gravity.BOTTOM) {
-            drawRect.set(viewRect.centerX() - width / 2,
-                    viewRect.bottom,
-                    viewRect.centerX() + width / 2,
-                    viewRect.bottom + height);
-
-            point.x = viewRect.centerX();
-            point.y = viewRect.bottom;
-
-            if (restrict && !screenRect.contains(drawRect)) {
-                if (drawRect.right > screenRect.right) {
-                    drawRect.offset(screenRect.right - drawRect.right, 0);
-                } else if (drawRect.left < screenRect.left) {
-                    drawRect.offset(-drawRect.left, 0);
-                }
-                if (drawRect.bottom > screenRect.bottom) {
-                    // this means there's no enough space!
-                    calculatePositions(gravities);
-                    return;
-                } else if (drawRect.top < screenRect.top) {
-                    drawRect.offset(0, screenRect.top - drawRect.top);
-                }
+        final int width = mView.getMeasuredWidth();
+        final int height = mView.getMeasuredHeight();
+        final PlacementSolver solver = mSolver;
+        boolean solved = false;
+
+        if (null != mPlacementCache) {
+            final int[] key = mPlacementKey;
+            key[0] = toolTipId;
+            key[1] = gravity.ordinal();
+            key[2] = (restrict ? 1 : 0) | (centerHorizontally ? 2 : 0);
+            key[3] = width;
+            key[4] = height;
+            key[5] = viewRect.left;
+            key[6] = viewRect.top;
+            key[7] = viewRect.right;
+            key[8] = viewRect.bottom;
+            key[9] = screenRect.left;
+            key[10] = screenRect.top;
+            key[11] = screenRect.right;
+            key[12] = screenRect.bottom;
+            if (null != mObstacles) {
+                PlacementSolver.getCandidateBounds(
+                        tempRect,
+                        viewRect.left, viewRect.top, viewRect.right, viewRect.bottom,
+                        width, height,
+                        screenRect.left, screenRect.top, screenRect.right, screenRect.bottom,
+                        restrict, centerHorizontally);
+                final long version = mObstacles.getRegionVersion(
+                        this, tempRect.left, tempRect.top, tempRect.right, tempRect.bottom);
+                key[13] = (int) (version >>> 32);
+                key[14] = (int) version;
+            } else {
+                key[13] = 0;
+                key[14] = 0;
             }
-        } else if (gravity == TooltipManager.Gravity.TOP) {
-            drawRect.set(viewRect.centerX() - width / 2,
-                    viewRect.top - height,
-                    viewRect.centerX() + width / 2,
-                    viewRect.top);
-
-            point.x = viewRect.centerX();
-            point.y = viewRect.top;
+            solved = mPlacementCache.get(key, solver);
+        }
 
-            if (restrict && !screenRect.contains(drawRect)) {
-                if (drawRect.right > screenRect.right) {
-                    drawRect.offset(screenRect.right - drawRect.right, 0);
-                } else if (drawRect.left < screenRect.left) {
-                    drawRect.offset(-drawRect.left, 0);
-                }
-                if (drawRect.top < screenRect.top) {
-                    // this means there's no enough space!
-                    calculatePositions(gravities);
-                    return;
-                } else if (drawRect.bottom > screenRect.bottom) {
-                    drawRect.offset(0, screenRect.bottom - drawRect.bottom);
-                }
-            }
-        } else if (gravity == TooltipManager.Gravity.RIGHT) {
-            drawRect.set(viewRect.right,
-                    viewRect.centerY() - height / 2,
-                    viewRect.right + width,
-                    viewRect.centerY() + height / 2);
+        if (!solved) {
+            solved = solver.solve(
+                    gravity,
+                    viewRect.left, viewRect.top, viewRect.right, viewRect.bottom,
+                    width, height,
+                    screenRect.left, screenRect.top, screenRect.right, screenRect.bottom,
+                    restrict, centerHorizontally,
+                    mObstacles, this);
+        }
 
-            point.x = viewRect.right;
-            point.y = viewRect.centerY();
+        mPlacementAttempts = solver.attempts;
 
-            if (restrict && !screenRect.contains(drawRect)) {
-                if (drawRect.bottom > screenRect.bottom) {
-                    drawRect.offset(0, screenRect.bottom - drawRect.bottom);
-                } else if (drawRect.top < screenRect.top) {
-                    drawRect.offset(0, screenRect.top - drawRect.top);
-                }
-                if (drawRect.right > screenRect.right) {
-                    // this means there's no enough space!
-                    calculatePositions(gravities);
-                    return;
-                } else if (drawRect.left < screenRect.left) {
-                    drawRect.offset(screenRect.left - drawRect.left, 0);
-                }
+        // failed to display the tooltip due to
+        // something wrong with its dimensions or
+        // the target position..
+        if (!solved) {
+            if (null != mObstacles) {
+                mObstacles.removeBubble(this);
             }
-        } else if (gravity == TooltipManager.Gravity.LEFT) {
-            drawRect.set(viewRect.left - width,
-                    viewRect.centerY() - height / 2,
-                    viewRect.left,
-                    viewRect.centerY() + height / 2);
-
-            point.x = viewRect.left;
-            point.y = viewRect.centerY();
-
-            if (restrict && !screenRect.contains(drawRect)) {
-                if (drawRect.bottom > screenRect.bottom) {
-                    drawRect.offset(0, screenRect.bottom - drawRect.bottom);
-                } else if (drawRect.top < screenRect.top) {
-                    drawRect.offset(0, screenRect.top - drawRect.top);
-                }
-                if (drawRect.left < screenRect.left) {
-                    // this means there's no enough space!
-                    this.gravity = TooltipManager.Gravity.RIGHT;
-                    calculatePositions(gravities);
-                    return;
-                } else if (drawRect.right > screenRect.right) {
-                    drawRect.offset(screenRect.right - drawRect.right, 0);
-                }
+            if (null != mMetrics) {
+                mMetrics.onPlacement(toolTipId, mPlacementAttempts, false);
             }
-        } else if (this.gravity == TooltipManager.Gravity.CENTER) {
-            drawRect.set(viewRect.centerX() - width / 2,
-                    viewRect.centerY() - height / 2,
-                    viewRect.centerX() - width / 2,
-                    viewRect.centerY() + height / 2);
+            if (null != tooltipListener) {
+                tooltipListener.onShowFailed(this);
+            }
+            setVisibility(GONE);
+            return;
+        }
 
-            point.x = viewRect.centerX();
-            point.y = viewRect.centerY();
+        final TooltipManager.Gravity gravity = solver.gravity;
+        drawRect.set(solver.left, solver.top, solver.right, solver.bottom);
 
-            if (restrict && !screenRect.contains(drawRect)) {
-                if (drawRect.bottom > screenRect.bottom) {
-                    drawRect.offset(0, screenRect.bottom - drawRect.bottom);
-                } else if (drawRect.top < screenRect.top) {
-                    drawRect.offset(0, screenRect.top - drawRect.top);
-                }
-                if (drawRect.right > screenRect.right) {
-                    drawRect.offset(screenRect.right - drawRect.right, 0);
-                } else if (drawRect.left < screenRect.left) {
-                    drawRect.offset(screenRect.left - drawRect.left, 0);
-                }
-            }
+        if (null != mObstacles) {
+            mObstacles.setBubble(this, drawRect.left, drawRect.top, drawRect.right, drawRect.bottom);
         }
-        //@formatter:on
 
-        if (centerHorizontally) {
-            drawRect.offset((screenRect.right - drawRect.right - drawRect.left) / 2, 0);
+        if (null != mPlacementCache && solver.attempts > 0) {
+            mPlacementCache.put(mPlacementKey, solver);
         }
 
         // translate the textview
@@ -639,23 +976,35 @@ class TooltipView extends ViewGroup implements Tooltip {
             // get the global rect for the textview
             mView.getGlobalVisibleRect(tempRect);
 
-            point.x -= tempRect.left;
-            point.y -= tempRect.top;
+            int x = solver.pointX - tempRect.left;
+            int y = solver.pointY - tempRect.top;
 
             if (!hideArrow) {
                 if (gravity == TooltipManager.Gravity.LEFT || gravity == TooltipManager.Gravity.RIGHT) {
-                    point.y -= padding / 2;
+                    y -= padding / 2;
                 } else if (gravity == TooltipManager.Gravity.TOP || gravity == TooltipManager.Gravity.BOTTOM) {
-                    point.x -= padding / 2;
+                    x -= padding / 2;
                 }
             }
 
             mDrawable.setAnchor(gravity, hideArrow ? 0 : padding / 2);
 
             if (!this.hideArrow) {
-                mDrawable.setDestinationPoint(point);
+                destinationPoint.set(x, y);
+                mDrawable.setDestinationPoint(destinationPoint);
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                // the outline follows the arrow
+                mView.invalidateOutline();
             }
         }
+
+        mPlaced = true;
+
+        if (null != mMetrics) {
+            mMetrics.onPlacement(toolTipId, mPlacementAttempts, true);
+        }
     }
 
     @Override
@@ -681,59 +1030,141 @@ class TooltipView extends ViewGroup implements Tooltip {
 
     void setText(final CharSequence text) {
         if (DBG) Log.i(TAG, "setText: " + text);
+        // spans are not part of the comparison, only plain strings can be compared by value
+        if (text == this.text || (text instanceof String && text.equals(this.text))) {
+            return;
+        }
         this.text = text;
         if (null != mTextView) {
-            mTextView.setText(Html.fromHtml((String) text));
+            mTextView.setText(HtmlCache.fromHtml(text));
         }
     }
 
+    /**
+     * The tooltips do not take part in the regular touch dispatch,
+     * their touches are delivered by the {@link TooltipTouchRouter}
+     */
     @Override
-    public boolean onTouchEvent(final MotionEvent event) {
-        if (mAnimation != null && mAnimation.isStarted()) return true;
-        if (!mAttached || !mShowing || !isShown()) return false;
+    public boolean dispatchTouchEvent(final MotionEvent event) {
+        return false;
+    }
 
-        if (DBG) Log.i(TAG, "onTouchEvent: " + event.getAction() + ", active: " + mActivated);
+    static final int TOUCH_IGNORED = 0;
+    static final int TOUCH_CONSUMED = 1;
+    static final int TOUCH_CONTENT = 2;
+
+    /**
+     * Handles a touch down routed by the {@link TooltipTouchRouter}: the content view gets
+     * the event first, then the close policy is applied.
+     *
+     * @param event the event, in the coordinates of the parent of this view
+     * @return {@link #TOUCH_CONTENT} if the content view handles the gesture, {@link #TOUCH_CONSUMED}
+     * if the event must not reach the views below, {@link #TOUCH_IGNORED} otherwise
+     */
+    int onRoutedTouchDown(final MotionEvent event) {
+        if (!mAttached || !isShown()) return TOUCH_IGNORED;
+
+        final int x = (int) (event.getX() - getLeft() - getTranslationX());
+        final int y = (int) (event.getY() - getTop() - getTranslationY());
+        final boolean containsTouch = drawRect.contains(x, y);
+
+        if (containsTouch && mShowing && dispatchRoutedTouch(event)) {
+            return TOUCH_CONTENT;
+        }
 
-        final int action = event.getActionMasked();
+        if (mAnimator.isRunning()) return TOUCH_CONSUMED;
+        if (!mShowing) return TOUCH_IGNORED;
 
-        if (closePolicy == ClosePolicy.TouchOutside
-                || closePolicy == ClosePolicy.TouchInside
-                || closePolicy == ClosePolicy.TouchInsideExclusive
-                || closePolicy == ClosePolicy.TouchOutsideExclusive
-                ) {
+        if (DBG) Log.i(TAG, "onRoutedTouchDown: " + x + ", " + y + ", active: " + mActivated);
 
+        if (hasTouchClosePolicy()) {
             if (!mActivated) {
-                if (DBG) Log.w(TAG, "not yet activated..., " + action);
-                return true;
+                if (DBG) Log.w(TAG, "not yet activated...");
+                return TOUCH_CONSUMED;
             }
 
-            if (action == MotionEvent.ACTION_DOWN) {
-
-                final boolean containsTouch = drawRect.contains((int) event.getX(), (int) event.getY());
-
-                if (closePolicy == ClosePolicy.TouchInside || closePolicy == ClosePolicy.TouchInsideExclusive) {
-                    if (containsTouch) {
-                        onClose(true, true);
-                        return true;
-                    }
-                    return closePolicy == ClosePolicy.TouchInsideExclusive;
-                } else {
-                    onClose(true, containsTouch);
-                    return closePolicy == ClosePolicy.TouchOutsideExclusive || containsTouch;
+            if (closePolicy == ClosePolicy.TouchInside || closePolicy == ClosePolicy.TouchInsideExclusive) {
+                if (containsTouch) {
+                    onClose(true, true);
+                    return TOUCH_CONSUMED;
                 }
+                return closePolicy == ClosePolicy.TouchInsideExclusive ? TOUCH_CONSUMED : TOUCH_IGNORED;
+            } else {
+                onClose(true, containsTouch);
+                return closePolicy == ClosePolicy.TouchOutsideExclusive || containsTouch ? TOUCH_CONSUMED : TOUCH_IGNORED;
             }
         }
 
-        return false;
+        return TOUCH_IGNORED;
+    }
+
+    /**
+     * Delivers a touch event to the content view
+     *
+     * @param event the event, in the coordinates of the parent of this view
+     */
+    boolean dispatchRoutedTouch(final MotionEvent event) {
+        if (null == mView) return false;
+
+        final float offsetX = -getLeft() - getTranslationX() - mView.getLeft() - mView.getTranslationX();
+        final float offsetY = -getTop() - getTranslationY() - mView.getTop() - mView.getTranslationY();
+        event.offsetLocation(offsetX, offsetY);
+        final boolean handled = mView.dispatchTouchEvent(event);
+        event.offsetLocation(-offsetX, -offsetY);
+        return handled;
+    }
+
+    private boolean hasTouchClosePolicy() {
+        return closePolicy == ClosePolicy.TouchOutside
+                || closePolicy == ClosePolicy.TouchInside
+                || closePolicy == ClosePolicy.TouchInsideExclusive
+                || closePolicy == ClosePolicy.TouchOutsideExclusive;
+    }
+
+    /**
+     * @return true if the close policy reacts to touches outside of the bubble
+     */
+    boolean isClosingOnTouchOutside() {
+        return closePolicy == ClosePolicy.TouchOutside
+                || closePolicy == ClosePolicy.TouchOutsideExclusive
+                || closePolicy == ClosePolicy.TouchInsideExclusive;
+    }
+
+    /**
+     * @return true if the tooltip consumes every touch, wherever it lands: while it
+     * animates, or until it is activated if it has a touch close policy
+     */
+    boolean isTouchBlocking() {
+        return mAnimator.isRunning() || (mAttached && mShowing && !mActivated && hasTouchClosePolicy());
+    }
+
+    void setTouchRouter(TooltipTouchRouter router) {
+        if (null != mTouchRouter && mTouchBlocking) {
+            mTouchRouter.onTouchBlockingChanged(false);
+        }
+        mTouchRouter = router;
+        mTouchBlocking = isTouchBlocking();
+        if (null != mTouchRouter && mTouchBlocking) {
+            mTouchRouter.onTouchBlockingChanged(true);
+        }
+    }
+
+    private void updateTouchBlocking() {
+        final boolean blocking = isTouchBlocking();
+        if (blocking != mTouchBlocking) {
+            mTouchBlocking = blocking;
+            if (null != mTouchRouter) {
+                mTouchRouter.onTouchBlockingChanged(blocking);
+            }
+        }
     }
 
     private void onClose(boolean fromUser, boolean containsTouch) {
         if (DBG) Log.i(TAG, "onClose. fromUser: " + fromUser + ", containsTouch: " + containsTouch);
 
-        if (null == getHandler()) return;
         if (!isAttached()) return;
 
-        getHandler().removeCallbacks(hideRunnable);
+        mTimers.cancel(mHideTimer);
 
         if (null != closeListener) {
             closeListener.onClose(this);
@@ -747,6 +1178,40 @@ class TooltipView extends ViewGroup implements Tooltip {
     private OnCloseListener closeListener;
     private OnToolTipListener tooltipListener;
 
+    private TooltipPool mPool;
+    private TooltipObstacles mObstacles;
+    private TimerWheel mTimers;
+    private PlacementCache mPlacementCache;
+    private TooltipMetrics mMetrics;
+    private DroppedFrameCounter mFrameCounter;
+    private long mAnimationStartTime;
+    private long mMeasureNanos;
+    private int mPlacementAttempts;
+
+    void setMetrics(TooltipMetrics metrics) {
+        this.mMetrics = metrics;
+    }
+
+    void setPool(TooltipPool pool) {
+        this.mPool = pool;
+    }
+
+    TooltipPool getPool() {
+        return mPool;
+    }
+
+    void setObstacles(TooltipObstacles obstacles) {
+        this.mObstacles = obstacles;
+    }
+
+    void setTimers(TimerWheel timers) {
+        this.mTimers = timers;
+    }
+
+    void setPlacementCache(PlacementCache cache) {
+        this.mPlacementCache = cache;
+    }
+
     void setOnCloseListener(OnCloseListener listener) {
         this.closeListener = listener;
     }
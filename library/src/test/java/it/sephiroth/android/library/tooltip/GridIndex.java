@@ -0,0 +1,196 @@
+package it.sephiroth.android.library.tooltip;
+
+import java.util.Arrays;
+
+/**
+ * The uniform grid of 128px cells used by {@link RectIndex} before the R-tree, on plain
+ * Java: the SparseArray lookups are binary searches over sorted int keys, as on Android.
+ * Used as reference by the benchmarks.
+ */
+final class GridIndex {
+    private static final int CELL_SIZE = 128;
+
+    /**
+     * Sorted int keys, binary searched: a SparseArray
+     */
+    private static final class IntMap<T> {
+        int[] keys = new int[16];
+        Object[] values = new Object[16];
+        int size;
+
+        @SuppressWarnings ("unchecked")
+        T get(int key) {
+            final int i = Arrays.binarySearch(keys, 0, size, key);
+            return i >= 0 ? (T) values[i] : null;
+        }
+
+        void put(int key, T value) {
+            int i = Arrays.binarySearch(keys, 0, size, key);
+            if (i >= 0) {
+                values[i] = value;
+                return;
+            }
+            i = ~i;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(values, i, values, i + 1, size - i);
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        void remove(int key) {
+            final int i = Arrays.binarySearch(keys, 0, size, key);
+            if (i >= 0) {
+                System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                values[--size] = null;
+            }
+        }
+    }
+
+    private static final class Cell {
+        int[] keys = new int[4];
+        int size;
+
+        void add(int key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+
+        void remove(int key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    keys[i] = keys[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int sStamp;
+
+    // left, top, right, bottom, stamp
+    private final IntMap<int[]> mRects = new IntMap<int[]>();
+    private final IntMap<Cell> mCells = new IntMap<Cell>();
+
+    boolean put(int key, int left, int top, int right, int bottom) {
+        int[] rect = mRects.get(key);
+        if (null != rect) {
+            if (rect[0] == left && rect[1] == top && rect[2] == right && rect[3] == bottom) {
+                return false;
+            }
+            unregister(key, rect);
+        } else {
+            rect = new int[5];
+            mRects.put(key, rect);
+        }
+        rect[0] = left;
+        rect[1] = top;
+        rect[2] = right;
+        rect[3] = bottom;
+        rect[4] = ++sStamp;
+        register(key, rect);
+        return true;
+    }
+
+    boolean intersects(int exclude, int left, int top, int right, int bottom) {
+        if (mRects.size == 0 || left >= right || top >= bottom) {
+            return false;
+        }
+        final int cx1 = cell(right - 1);
+        final int cy1 = cell(bottom - 1);
+        for (int cy = cell(top); cy <= cy1; cy++) {
+            for (int cx = cell(left); cx <= cx1; cx++) {
+                final Cell cell = mCells.get(cellKey(cx, cy));
+                if (null == cell) continue;
+
+                for (int i = 0; i < cell.size; i++) {
+                    final int key = cell.keys[i];
+                    if (key == exclude) continue;
+
+                    final int[] rect = mRects.get(key);
+                    if (left < rect[2] && rect[0] < right && top < rect[3] && rect[1] < bottom) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    long getRegionVersion(int exclude, int left, int top, int right, int bottom) {
+        if (mRects.size == 0 || left >= right || top >= bottom) {
+            return 0;
+        }
+        final int cx0 = cell(left);
+        final int cy0 = cell(top);
+        final int cx1 = cell(right - 1);
+        final int cy1 = cell(bottom - 1);
+        int count = 0;
+        int stamp = 0;
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                final Cell cell = mCells.get(cellKey(cx, cy));
+                if (null == cell) continue;
+
+                for (int i = 0; i < cell.size; i++) {
+                    final int key = cell.keys[i];
+                    if (key == exclude) continue;
+
+                    final int[] rect = mRects.get(key);
+                    if (left < rect[2] && rect[0] < right && top < rect[3] && rect[1] < bottom
+                            && cx == Math.max(cx0, cell(rect[0])) && cy == Math.max(cy0, cell(rect[1]))) {
+                        count++;
+                        stamp = Math.max(stamp, rect[4]);
+                    }
+                }
+            }
+        }
+        return (long) count << 32 | (stamp & 0xffffffffL);
+    }
+
+    private void register(int key, int[] rect) {
+        if (rect[0] >= rect[2] || rect[1] >= rect[3]) return;
+        final int cx1 = cell(rect[2] - 1);
+        final int cy1 = cell(rect[3] - 1);
+        for (int cy = cell(rect[1]); cy <= cy1; cy++) {
+            for (int cx = cell(rect[0]); cx <= cx1; cx++) {
+                final int cellKey = cellKey(cx, cy);
+                Cell cell = mCells.get(cellKey);
+                if (null == cell) {
+                    cell = new Cell();
+                    mCells.put(cellKey, cell);
+                }
+                cell.add(key);
+            }
+        }
+    }
+
+    private void unregister(int key, int[] rect) {
+        if (rect[0] >= rect[2] || rect[1] >= rect[3]) return;
+        final int cx1 = cell(rect[2] - 1);
+        final int cy1 = cell(rect[3] - 1);
+        for (int cy = cell(rect[1]); cy <= cy1; cy++) {
+            for (int cx = cell(rect[0]); cx <= cx1; cx++) {
+                final Cell cell = mCells.get(cellKey(cx, cy));
+                if (null != cell) {
+                    cell.remove(key);
+                }
+            }
+        }
+    }
+
+    private static int cell(int coordinate) {
+        return coordinate >= 0 ? coordinate / CELL_SIZE : (coordinate - CELL_SIZE + 1) / CELL_SIZE;
+    }
+
+    private static int cellKey(int cx, int cy) {
+        return (cx & 0xffff) << 16 | (cy & 0xffff);
+    }
+}
@@ -0,0 +1,186 @@
+package it.sephiroth.android.library.tooltip;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.Gravity;
+
+/**
+ * The recursive placement of TooltipView before {@link PlacementSolver}, quirks
+ * included, on primitive coordinates. Used as reference by the tests and the benchmarks.
+ */
+final class LegacyPlacement {
+
+    // the gravity field of the tooltip, it survives between layouts
+    Gravity tooltipGravity;
+
+    int left;
+    int top;
+    int right;
+    int bottom;
+    int pointX;
+    int pointY;
+
+    // gravity of the last evaluated candidate, null if the tooltip failed to show
+    Gravity gravity;
+    int attempts;
+
+    LegacyPlacement(Gravity gravity) {
+        this.tooltipGravity = gravity;
+    }
+
+    void layout(
+            int anchorLeft, int anchorTop, int anchorRight, int anchorBottom, int width, int height,
+            int screenLeft, int screenTop, int screenRight, int screenBottom, boolean restrict) {
+
+        List<Gravity> gravities = new ArrayList<Gravity>(
+                Arrays.asList(Gravity.LEFT, Gravity.RIGHT, Gravity.TOP, Gravity.BOTTOM, Gravity.CENTER));
+        gravities.remove(tooltipGravity);
+        gravities.add(0, tooltipGravity);
+
+        attempts = 0;
+        calculatePositions(
+                gravities, anchorLeft, anchorTop, anchorRight, anchorBottom, width, height, screenLeft, screenTop, screenRight,
+                screenBottom, restrict);
+    }
+
+    private void calculatePositions(
+            List<Gravity> gravities, int anchorLeft, int anchorTop, int anchorRight, int anchorBottom, int width, int height,
+            int screenLeft, int screenTop, int screenRight, int screenBottom, boolean restrict) {
+
+        if (gravities.size() < 1) {
+            gravity = null;
+            return;
+        }
+
+        final Gravity gravity = gravities.remove(0);
+        this.gravity = gravity;
+        attempts++;
+
+        final int centerX = (anchorLeft + anchorRight) / 2;
+        final int centerY = (anchorTop + anchorBottom) / 2;
+        pointX = 0;
+        pointY = 0;
+
+        if (gravity == Gravity.BOTTOM) {
+            set(centerX - width / 2, anchorBottom, centerX + width / 2, anchorBottom + height);
+            pointX = centerX;
+            pointY = anchorBottom;
+
+            if (restrict && !contains(screenLeft, screenTop, screenRight, screenBottom)) {
+                if (right > screenRight) {
+                    offset(screenRight - right, 0);
+                } else if (left < screenLeft) {
+                    offset(-left, 0);
+                }
+                if (bottom > screenBottom) {
+                    calculatePositions(
+                            gravities, anchorLeft, anchorTop, anchorRight, anchorBottom, width, height, screenLeft, screenTop,
+                            screenRight, screenBottom, restrict);
+                    return;
+                } else if (top < screenTop) {
+                    offset(0, screenTop - top);
+                }
+            }
+        } else if (gravity == Gravity.TOP) {
+            set(centerX - width / 2, anchorTop - height, centerX + width / 2, anchorTop);
+            pointX = centerX;
+            pointY = anchorTop;
+
+            if (restrict && !contains(screenLeft, screenTop, screenRight, screenBottom)) {
+                if (right > screenRight) {
+                    offset(screenRight - right, 0);
+                } else if (left < screenLeft) {
+                    offset(-left, 0);
+                }
+                if (top < screenTop) {
+                    calculatePositions(
+                            gravities, anchorLeft, anchorTop, anchorRight, anchorBottom, width, height, screenLeft, screenTop,
+                            screenRight, screenBottom, restrict);
+                    return;
+                } else if (bottom > screenBottom) {
+                    offset(0, screenBottom - bottom);
+                }
+            }
+        } else if (gravity == Gravity.RIGHT) {
+            set(anchorRight, centerY - height / 2, anchorRight + width, centerY + height / 2);
+            pointX = anchorRight;
+            pointY = centerY;
+
+            if (restrict && !contains(screenLeft, screenTop, screenRight, screenBottom)) {
+                if (bottom > screenBottom) {
+                    offset(0, screenBottom - bottom);
+                } else if (top < screenTop) {
+                    offset(0, screenTop - top);
+                }
+                if (right > screenRight) {
+                    calculatePositions(
+                            gravities, anchorLeft, anchorTop, anchorRight, anchorBottom, width, height, screenLeft, screenTop,
+                            screenRight, screenBottom, restrict);
+                    return;
+                } else if (left < screenLeft) {
+                    offset(screenLeft - left, 0);
+                }
+            }
+        } else if (gravity == Gravity.LEFT) {
+            set(anchorLeft - width, centerY - height / 2, anchorLeft, centerY + height / 2);
+            pointX = anchorLeft;
+            pointY = centerY;
+
+            if (restrict && !contains(screenLeft, screenTop, screenRight, screenBottom)) {
+                if (bottom > screenBottom) {
+                    offset(0, screenBottom - bottom);
+                } else if (top < screenTop) {
+                    offset(0, screenTop - top);
+                }
+                if (left < screenLeft) {
+                    // quirk: the rejection of LEFT is written back into the tooltip
+                    tooltipGravity = Gravity.RIGHT;
+                    calculatePositions(
+                            gravities, anchorLeft, anchorTop, anchorRight, anchorBottom, width, height, screenLeft, screenTop,
+                            screenRight, screenBottom, restrict);
+                    return;
+                } else if (right > screenRight) {
+                    offset(screenRight - right, 0);
+                }
+            }
+        } else if (tooltipGravity == Gravity.CENTER) {
+            // quirk: tested against the tooltip gravity, and right is set to the left edge
+            set(centerX - width / 2, centerY - height / 2, centerX - width / 2, centerY + height / 2);
+            pointX = centerX;
+            pointY = centerY;
+
+            if (restrict && !contains(screenLeft, screenTop, screenRight, screenBottom)) {
+                if (bottom > screenBottom) {
+                    offset(0, screenBottom - bottom);
+                } else if (top < screenTop) {
+                    offset(0, screenTop - top);
+                }
+                if (right > screenRight) {
+                    offset(screenRight - right, 0);
+                } else if (left < screenLeft) {
+                    offset(screenLeft - left, 0);
+                }
+            }
+        }
+    }
+
+    private boolean contains(int screenLeft, int screenTop, int screenRight, int screenBottom) {
+        return left >= screenLeft && top >= screenTop && right <= screenRight && bottom <= screenBottom;
+    }
+
+    private void set(int left, int top, int right, int bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    private void offset(int dx, int dy) {
+        left += dx;
+        right += dx;
+        top += dy;
+        bottom += dy;
+    }
+}
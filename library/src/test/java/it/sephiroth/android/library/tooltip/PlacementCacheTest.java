@@ -0,0 +1,138 @@
+package it.sephiroth.android.library.tooltip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.Gravity;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Layout passes over a screen full of tooltips, placed in turn through {@link PlacementCache}
+ * the way TooltipView places them.
+ */
+public class PlacementCacheTest {
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int TOOLTIPS = 24;
+    private static final int ANCHOR_SIZE = 80;
+    private static final int WIDTH = 240;
+    private static final int HEIGHT = 100;
+
+    private final PlacementSolver solver = new PlacementSolver();
+    private final int[] key = new int[PlacementCache.KEY_SIZE];
+    private final int[] bounds = new int[4];
+    private TooltipObstacles obstacles;
+    private Object[] owners;
+    private PlacementCache cache;
+
+    @Before
+    public void setUp() {
+        obstacles = new TooltipObstacles();
+        owners = new Object[TOOLTIPS];
+        for (int i = 0; i < TOOLTIPS; i++) {
+            owners[i] = new Object();
+        }
+        cache = new PlacementCache();
+    }
+
+    /**
+     * @return the number of placements taken from the cache
+     */
+    private int layoutPass() {
+        final int hits = cache.getHitCount();
+        for (int id = 0; id < TOOLTIPS; id++) {
+            // a 4 x 6 grid of anchors, the bubbles of the neighbours compete for the same room
+            final int anchorLeft = 60 + (id % 4) * 260;
+            final int anchorTop = 100 + (id / 4) * 300;
+            place(id, anchorLeft, anchorTop);
+        }
+        return cache.getHitCount() - hits;
+    }
+
+    private void place(int id, int anchorLeft, int anchorTop) {
+        final Object owner = owners[id];
+        final int anchorRight = anchorLeft + ANCHOR_SIZE;
+        final int anchorBottom = anchorTop + ANCHOR_SIZE;
+
+        key[0] = id;
+        key[1] = Gravity.BOTTOM.ordinal();
+        key[2] = 1;
+        key[3] = WIDTH;
+        key[4] = HEIGHT;
+        key[5] = anchorLeft;
+        key[6] = anchorTop;
+        key[7] = anchorRight;
+        key[8] = anchorBottom;
+        key[9] = 0;
+        key[10] = 0;
+        key[11] = SCREEN_WIDTH;
+        key[12] = SCREEN_HEIGHT;
+        candidateBounds(anchorLeft, anchorTop, anchorRight, anchorBottom);
+        final long version = obstacles.getRegionVersion(owner, bounds[0], bounds[1], bounds[2], bounds[3]);
+        key[13] = (int) (version >>> 32);
+        key[14] = (int) version;
+
+        if (!cache.get(key, solver)) {
+            assertTrue(
+                    solver.solve(
+                            Gravity.BOTTOM, anchorLeft, anchorTop, anchorRight, anchorBottom, WIDTH, HEIGHT, 0, 0, SCREEN_WIDTH,
+                            SCREEN_HEIGHT, true, false, obstacles, owner));
+            cache.put(key, solver);
+        }
+        obstacles.setBubble(owner, solver.left, solver.top, solver.right, solver.bottom);
+    }
+
+    /**
+     * The area every candidate can cover, as PlacementSolver#getCandidateBounds without the clamping
+     */
+    private void candidateBounds(int anchorLeft, int anchorTop, int anchorRight, int anchorBottom) {
+        bounds[0] = Math.max(0, anchorLeft - WIDTH);
+        bounds[1] = Math.max(0, anchorTop - HEIGHT);
+        bounds[2] = Math.min(SCREEN_WIDTH, anchorRight + WIDTH);
+        bounds[3] = Math.min(SCREEN_HEIGHT, anchorBottom + HEIGHT);
+    }
+
+    @Test
+    public void denseScreenHits() {
+        cache.setTooltipCount(TOOLTIPS);
+        assertEquals(TOOLTIPS * PlacementCache.ENTRIES_PER_TOOLTIP, cache.getCapacity());
+
+        // the bubbles settle: the first passes move the neighbours of the ones placed later
+        layoutPass();
+        layoutPass();
+        assertEquals(TOOLTIPS, layoutPass());
+        assertEquals(TOOLTIPS, layoutPass());
+    }
+
+    @Test
+    public void denseScreenMissesWithoutSizing() {
+        // the placements of 24 tooltips cycle through 8 entries, each one is evicted before its next turn
+        assertEquals(PlacementCache.DEFAULT_MAX_SIZE, cache.getCapacity());
+        layoutPass();
+        layoutPass();
+        assertEquals(0, layoutPass());
+    }
+
+    @Test
+    public void maxSize() {
+        cache.setTooltipCount(TOOLTIPS);
+        cache.setMaxSize(100);
+        assertEquals(100, cache.getCapacity());
+        cache.setMaxSize(4);
+        assertEquals(TOOLTIPS * PlacementCache.ENTRIES_PER_TOOLTIP, cache.getCapacity());
+
+        // disabled
+        cache.setMaxSize(0);
+        assertEquals(0, cache.getCapacity());
+        cache.setTooltipCount(TOOLTIPS + 1);
+        assertEquals(0, cache.getCapacity());
+        layoutPass();
+        assertEquals(0, layoutPass());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void negativeMaxSize() {
+        cache.setMaxSize(-1);
+    }
+}
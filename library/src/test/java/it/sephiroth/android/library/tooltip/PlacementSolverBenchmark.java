@@ -0,0 +1,117 @@
+package it.sephiroth.android.library.tooltip;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.Gravity;
+
+/**
+ * One layout pass of {@link PlacementSolver} compared to the recursive placement it
+ * replaced, see {@link LegacyPlacement}, for every preferred gravity and every path
+ * through the candidates:
+ * <ul>
+ * <li>PREFERRED: the preferred gravity fits</li>
+ * <li>FALLBACK: the anchor is on the screen edge facing the preferred gravity, the next
+ * candidate fits. CENTER never falls back and takes the PREFERRED path.</li>
+ * <li>LAST: the bubble fits on no side of the anchor, it ends up on CENTER</li>
+ * <li>OBSTRUCTED: every candidate overlaps an obstacle, the first fitting one is placed
+ * again. The legacy placement knew nothing about obstacles and takes the PREFERRED path.</li>
+ * </ul>
+ * Run with <code>./gradlew :library:jmh -Pjmh.include=PlacementSolverBenchmark</code>
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class PlacementSolverBenchmark {
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int ANCHOR_SIZE = 100;
+
+    private static final PlacementSolver.Obstacles EVERYWHERE = new PlacementSolver.Obstacles() {
+        @Override
+        public boolean intersects(final Object exclude, final int left, final int top, final int right, final int bottom) {
+            return true;
+        }
+    };
+
+    @Param ({"LEFT", "RIGHT", "TOP", "BOTTOM", "CENTER"})
+    public Gravity gravity;
+
+    @Param ({"PREFERRED", "FALLBACK", "LAST", "OBSTRUCTED"})
+    public String path;
+
+    private final PlacementSolver solver = new PlacementSolver();
+    private LegacyPlacement legacy;
+
+    private int anchorX;
+    private int anchorY;
+    private int width;
+    private int height;
+    private PlacementSolver.Obstacles obstacles;
+
+    @Setup
+    public void setup() {
+        legacy = new LegacyPlacement(gravity);
+        anchorX = SCREEN_WIDTH / 2 - ANCHOR_SIZE / 2;
+        anchorY = SCREEN_HEIGHT / 2 - ANCHOR_SIZE / 2;
+        width = 400;
+        height = 200;
+        obstacles = null;
+
+        if ("FALLBACK".equals(path)) {
+            switch (gravity) {
+                case LEFT:
+                    anchorX = 0;
+                    break;
+                case RIGHT:
+                    anchorX = SCREEN_WIDTH - ANCHOR_SIZE;
+                    break;
+                case TOP:
+                    anchorY = 0;
+                    break;
+                case BOTTOM:
+                    anchorY = SCREEN_HEIGHT - ANCHOR_SIZE;
+                    break;
+                default:
+                    break;
+            }
+        } else if ("LAST".equals(path)) {
+            width = 1000;
+            height = 1800;
+        } else if ("OBSTRUCTED".equals(path)) {
+            obstacles = EVERYWHERE;
+        }
+    }
+
+    @Benchmark
+    public Gravity solver() {
+        solver.solve(
+                gravity, anchorX, anchorY, anchorX + ANCHOR_SIZE, anchorY + ANCHOR_SIZE, width, height, 0, 0, SCREEN_WIDTH,
+                SCREEN_HEIGHT, true, false, obstacles, null);
+        return solver.gravity;
+    }
+
+    @Benchmark
+    public Gravity legacy() {
+        // a new tooltip every time, so that a rejected LEFT does not change the next pass
+        legacy.tooltipGravity = gravity;
+        legacy.layout(
+                anchorX, anchorY, anchorX + ANCHOR_SIZE, anchorY + ANCHOR_SIZE, width, height, 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT,
+                true);
+        return legacy.gravity;
+    }
+}
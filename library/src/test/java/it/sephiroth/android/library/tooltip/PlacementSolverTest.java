@@ -0,0 +1,184 @@
+package it.sephiroth.android.library.tooltip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static it.sephiroth.android.library.tooltip.TooltipManager.Gravity;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pins the candidate order of {@link PlacementSolver} against the placement it replaced,
+ * see {@link LegacyPlacement}, and the two quirks it fixed: a rejected LEFT stuck as RIGHT
+ * for the following layouts, and CENTER was never placed as a fallback.
+ */
+public class PlacementSolverTest {
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int ANCHOR_SIZE = 100;
+
+    private static final PlacementSolver.Obstacles EVERYWHERE = new PlacementSolver.Obstacles() {
+        @Override
+        public boolean intersects(final Object exclude, final int left, final int top, final int right, final int bottom) {
+            return true;
+        }
+    };
+
+    private PlacementSolver solver;
+
+    @Before
+    public void setUp() {
+        solver = new PlacementSolver();
+    }
+
+    private boolean solve(Gravity preferred, int anchorX, int anchorY, int width, int height, PlacementSolver.Obstacles obstacles) {
+        return solver.solve(
+                preferred, anchorX, anchorY, anchorX + ANCHOR_SIZE, anchorY + ANCHOR_SIZE, width, height, 0, 0, SCREEN_WIDTH,
+                SCREEN_HEIGHT, true, false, obstacles, null);
+    }
+
+    private static LegacyPlacement legacy(Gravity preferred, int anchorX, int anchorY, int width, int height) {
+        LegacyPlacement legacy = new LegacyPlacement(preferred);
+        legacy.layout(
+                anchorX, anchorY, anchorX + ANCHOR_SIZE, anchorY + ANCHOR_SIZE, width, height, 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT,
+                true);
+        return legacy;
+    }
+
+    @Test
+    public void sameOrderAsLegacy() {
+        // anchors in the corners, along the edges and in the middle of the screen:
+        // every directional gravity is rejected at least once
+        final int[] xs = {0, SCREEN_WIDTH / 2 - ANCHOR_SIZE / 2, SCREEN_WIDTH - ANCHOR_SIZE};
+        final int[] ys = {0, SCREEN_HEIGHT / 2 - ANCHOR_SIZE / 2, SCREEN_HEIGHT - ANCHOR_SIZE};
+        final int[][] sizes = {{400, 200}, {600, 900}};
+
+        for (Gravity preferred : Gravity.values()) {
+            for (int[] size : sizes) {
+                for (int x : xs) {
+                    for (int y : ys) {
+                        LegacyPlacement legacy = legacy(preferred, x, y, size[0], size[1]);
+                        assertTrue(solve(preferred, x, y, size[0], size[1], null));
+
+                        if (legacy.gravity == Gravity.CENTER && preferred != Gravity.CENTER) {
+                            // the legacy CENTER fallback, see centerFallback
+                            continue;
+                        }
+
+                        final String message = preferred + " " + size[0] + "x" + size[1] + " at " + x + "," + y;
+                        assertEquals(message, legacy.gravity, solver.gravity);
+                        assertEquals(message, legacy.attempts, solver.attempts);
+                        assertEquals(message, legacy.top, solver.top);
+                        assertEquals(message, legacy.bottom, solver.bottom);
+                        assertEquals(message, legacy.pointX, solver.pointX);
+                        assertEquals(message, legacy.pointY, solver.pointY);
+                        if (legacy.gravity != Gravity.CENTER) {
+                            assertEquals(message, legacy.left, solver.left);
+                            assertEquals(message, legacy.right, solver.right);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectedLeftDoesNotStick() {
+        // no room on the left of the anchor: both fall back to RIGHT
+        LegacyPlacement legacy = legacy(Gravity.LEFT, 0, 500, 400, 200);
+        assertEquals(Gravity.RIGHT, legacy.gravity);
+        assertTrue(solve(Gravity.LEFT, 0, 500, 400, 200, null));
+        assertEquals(Gravity.RIGHT, solver.gravity);
+
+        // the anchor moved, both sides fit: the legacy layout kept RIGHT
+        legacy.layout(400, 500, 400 + ANCHOR_SIZE, 500 + ANCHOR_SIZE, 400, 200, 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT, true);
+        assertEquals(Gravity.RIGHT, legacy.gravity);
+
+        assertTrue(solve(Gravity.LEFT, 400, 500, 400, 200, null));
+        assertEquals(Gravity.LEFT, solver.gravity);
+        assertEquals(1, solver.attempts);
+        assertEquals(0, solver.left);
+        assertEquals(400, solver.right);
+        assertEquals(400, solver.pointX);
+    }
+
+    @Test
+    public void centerFallback() {
+        // too large for any side of an anchor in the middle of the screen
+        final int x = SCREEN_WIDTH / 2 - ANCHOR_SIZE / 2;
+        final int y = SCREEN_HEIGHT / 2 - ANCHOR_SIZE / 2;
+
+        LegacyPlacement legacy = legacy(Gravity.BOTTOM, x, y, 1000, 1800);
+        assertEquals(Gravity.CENTER, legacy.gravity);
+        assertEquals(5, legacy.attempts);
+        // the rect of the last rejected candidate, and no arrow point
+        assertEquals(0, legacy.pointX);
+        assertEquals(0, legacy.pointY);
+
+        assertTrue(solve(Gravity.BOTTOM, x, y, 1000, 1800, null));
+        assertEquals(Gravity.CENTER, solver.gravity);
+        assertEquals(5, solver.attempts);
+        assertEquals(40, solver.left);
+        assertEquals(60, solver.top);
+        assertEquals(1040, solver.right);
+        assertEquals(1860, solver.bottom);
+        assertEquals(SCREEN_WIDTH / 2, solver.pointX);
+        assertEquals(SCREEN_HEIGHT / 2, solver.pointY);
+    }
+
+    @Test
+    public void centerHasFullWidth() {
+        final int x = SCREEN_WIDTH / 2 - ANCHOR_SIZE / 2;
+        final int y = SCREEN_HEIGHT / 2 - ANCHOR_SIZE / 2;
+
+        LegacyPlacement legacy = legacy(Gravity.CENTER, x, y, 400, 200);
+        assertEquals(Gravity.CENTER, legacy.gravity);
+        assertEquals(legacy.left, legacy.right);
+
+        assertTrue(solve(Gravity.CENTER, x, y, 400, 200, null));
+        assertEquals(Gravity.CENTER, solver.gravity);
+        assertEquals(legacy.left, solver.left);
+        assertEquals(400, solver.right - solver.left);
+        assertEquals(200, solver.bottom - solver.top);
+    }
+
+    @Test
+    public void skipsObstructedCandidates() {
+        final int x = SCREEN_WIDTH / 2 - ANCHOR_SIZE / 2;
+        final int y = SCREEN_HEIGHT / 2 - ANCHOR_SIZE / 2;
+
+        // an obstacle below the anchor
+        PlacementSolver.Obstacles below = new PlacementSolver.Obstacles() {
+            @Override
+            public boolean intersects(final Object exclude, final int left, final int top, final int right, final int bottom) {
+                return bottom > SCREEN_HEIGHT / 2 + ANCHOR_SIZE / 2;
+            }
+        };
+
+        assertTrue(solve(Gravity.BOTTOM, x, y, 400, 200, below));
+        // LEFT and RIGHT are centered vertically on the anchor and overflow it, TOP is the first free one
+        assertEquals(Gravity.TOP, solver.gravity);
+        assertEquals(4, solver.attempts);
+    }
+
+    @Test
+    public void obstructedEverywhereKeepsFirstFitting() {
+        // no room below the anchor, everything else is obstructed
+        final int y = SCREEN_HEIGHT - ANCHOR_SIZE;
+        assertTrue(solve(Gravity.BOTTOM, 500, y, 400, 200, EVERYWHERE));
+        assertEquals(Gravity.LEFT, solver.gravity);
+        assertEquals(5, solver.attempts);
+        assertEquals(100, solver.left);
+        assertEquals(500, solver.right);
+    }
+
+    @Test
+    public void unrestricted() {
+        assertTrue(
+                solver.solve(
+                        Gravity.LEFT, 0, 0, ANCHOR_SIZE, ANCHOR_SIZE, 400, 200, 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT, false, false,
+                        EVERYWHERE, null));
+        assertEquals(Gravity.LEFT, solver.gravity);
+        assertEquals(-400, solver.left);
+    }
+}
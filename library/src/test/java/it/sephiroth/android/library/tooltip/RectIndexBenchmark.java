@@ -0,0 +1,138 @@
+package it.sephiroth.android.library.tooltip;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The queries of one placement, and the move of one bubble tracking its anchor, on
+ * {@link RectIndex} compared to the grid it replaced, see {@link GridIndex}:
+ * <ul>
+ * <li>SPREAD: bubbles laid out over the whole screen, next to each other</li>
+ * <li>CLUSTERED: all the bubbles piled up in a 500px square, the candidates of a new
+ * bubble around it</li>
+ * </ul>
+ * Run with <code>./gradlew :library:jmh -Pjmh.include=RectIndexBenchmark</code>
+ */
+@State (Scope.Thread)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class RectIndexBenchmark {
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+    private static final int QUERIES = 64;
+
+    @Param ({"8", "32", "128"})
+    public int bubbles;
+
+    @Param ({"SPREAD", "CLUSTERED"})
+    public String layout;
+
+    private final RectIndex rtree = new RectIndex();
+    private final GridIndex grid = new GridIndex();
+    private Integer[] keys;
+    // left, top, right, bottom of the query rects
+    private final int[][] queries = new int[QUERIES][];
+    private int next;
+    private int shift;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(1);
+        final boolean clustered = "CLUSTERED".equals(layout);
+        keys = new Integer[bubbles];
+
+        final int columns = (int) Math.ceil(Math.sqrt(bubbles * (double) SCREEN_WIDTH / SCREEN_HEIGHT));
+        final int rows = (bubbles + columns - 1) / columns;
+        for (int i = 0; i < bubbles; i++) {
+            final int width = 150 + random.nextInt(250);
+            final int height = 60 + random.nextInt(100);
+            final int left;
+            final int top;
+            if (clustered) {
+                left = 300 + random.nextInt(500 - width / 2);
+                top = 700 + random.nextInt(500 - height / 2);
+            } else {
+                final int cellWidth = SCREEN_WIDTH / columns;
+                final int cellHeight = SCREEN_HEIGHT / rows;
+                left = (i % columns) * cellWidth + random.nextInt(cellWidth / 4);
+                top = (i / columns) * cellHeight + random.nextInt(cellHeight / 4);
+            }
+            keys[i] = i;
+            rtree.put(keys[i], left, top, left + width, top + height);
+            grid.put(i, left, top, left + width, top + height);
+        }
+
+        for (int i = 0; i < QUERIES; i++) {
+            final int width = 400;
+            final int height = 200;
+            final int left;
+            final int top;
+            if (clustered) {
+                left = 200 + random.nextInt(700 - width);
+                top = 600 + random.nextInt(700 - height);
+            } else {
+                left = random.nextInt(SCREEN_WIDTH - width);
+                top = random.nextInt(SCREEN_HEIGHT - height);
+            }
+            queries[i] = new int[]{left, top, left + width, top + height};
+        }
+    }
+
+    private int[] nextQuery() {
+        next = (next + 1) & (QUERIES - 1);
+        return queries[next];
+    }
+
+    @Benchmark
+    public boolean intersectsRTree() {
+        final int[] q = nextQuery();
+        return rtree.intersects(keys[next % bubbles], q[0], q[1], q[2], q[3]);
+    }
+
+    @Benchmark
+    public boolean intersectsGrid() {
+        final int[] q = nextQuery();
+        return grid.intersects(next % bubbles, q[0], q[1], q[2], q[3]);
+    }
+
+    @Benchmark
+    public long regionVersionRTree() {
+        final int[] q = nextQuery();
+        return rtree.getRegionVersion(keys[next % bubbles], q[0], q[1], q[2], q[3]);
+    }
+
+    @Benchmark
+    public long regionVersionGrid() {
+        final int[] q = nextQuery();
+        return grid.getRegionVersion(next % bubbles, q[0], q[1], q[2], q[3]);
+    }
+
+    @Benchmark
+    public boolean moveRTree() {
+        final int[] q = nextQuery();
+        shift ^= 1;
+        return rtree.put(keys[0], q[0] + shift, q[1], q[2] + shift, q[3]);
+    }
+
+    @Benchmark
+    public boolean moveGrid() {
+        final int[] q = nextQuery();
+        shift ^= 1;
+        return grid.put(0, q[0] + shift, q[1], q[2] + shift, q[3]);
+    }
+}
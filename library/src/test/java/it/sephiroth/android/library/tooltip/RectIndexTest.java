@@ -0,0 +1,149 @@
+package it.sephiroth.android.library.tooltip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link RectIndex} against a brute force scan of the same rects, through enough puts,
+ * moves and removes to split, condense and shrink the tree several times.
+ */
+public class RectIndexTest {
+    private static final int KEYS = 200;
+
+    private RectIndex index;
+    // the reference, a null row is a key not in the index
+    private int[][] rects;
+
+    @Before
+    public void setUp() {
+        index = new RectIndex();
+        rects = new int[KEYS][];
+    }
+
+    private void put(int key, int left, int top, int right, int bottom) {
+        index.put(key, left, top, right, bottom);
+        rects[key] = new int[]{left, top, right, bottom};
+    }
+
+    private void remove(int key) {
+        index.remove(key);
+        rects[key] = null;
+    }
+
+    private boolean bruteIntersects(int exclude, int left, int top, int right, int bottom) {
+        return bruteCount(exclude, left, top, right, bottom) > 0;
+    }
+
+    private int bruteCount(int exclude, int left, int top, int right, int bottom) {
+        int count = 0;
+        for (int key = 0; key < KEYS; key++) {
+            final int[] r = rects[key];
+            if (key == exclude || null == r || r[0] >= r[2] || r[1] >= r[3]) continue;
+            if (left < r[2] && r[0] < right && top < r[3] && r[1] < bottom) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void assertMatches(Random random, int queries) {
+        for (int i = 0; i < queries; i++) {
+            final int left = random.nextInt(1200) - 60;
+            final int top = random.nextInt(2000) - 60;
+            final int right = left + 1 + random.nextInt(400);
+            final int bottom = top + 1 + random.nextInt(400);
+            final int exclude = random.nextInt(KEYS);
+
+            assertEquals(bruteIntersects(-1, left, top, right, bottom), index.intersects(left, top, right, bottom));
+            assertEquals(bruteIntersects(exclude, left, top, right, bottom), index.intersects(exclude, left, top, right, bottom));
+            assertEquals(bruteCount(exclude, left, top, right, bottom), index.getRegionVersion(exclude, left, top, right, bottom) >>> 32);
+        }
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        final Random random = new Random(42);
+
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 100; i++) {
+                final int key = random.nextInt(KEYS);
+                final int op = random.nextInt(10);
+                if (op < 7) {
+                    final int left = random.nextInt(1080);
+                    final int top = random.nextInt(1920);
+                    // mostly bubble sized, a few empty ones
+                    final int width = op == 0 ? 0 : 50 + random.nextInt(400);
+                    final int height = 40 + random.nextInt(200);
+                    put(key, left, top, left + width, top + height);
+                } else {
+                    remove(key);
+                }
+            }
+            assertMatches(random, 200);
+        }
+
+        for (int key = 0; key < KEYS; key++) {
+            remove(key);
+        }
+        assertEquals(0, index.size());
+        assertFalse(index.intersects(-10000, -10000, 10000, 10000));
+    }
+
+    @Test
+    public void matchesBruteForceWhenCrowded() {
+        final Random random = new Random(7);
+
+        // everything piled up in the same corner
+        for (int i = 0; i < 1000; i++) {
+            final int key = random.nextInt(KEYS);
+            if (random.nextInt(4) == 0) {
+                remove(key);
+            } else {
+                final int left = random.nextInt(100);
+                final int top = random.nextInt(100);
+                put(key, left, top, left + 100 + random.nextInt(300), top + 50 + random.nextInt(100));
+            }
+            if (i % 100 == 0) {
+                assertMatches(random, 100);
+            }
+        }
+        assertMatches(random, 500);
+    }
+
+    @Test
+    public void putSameRect() {
+        assertTrue(index.put(1, 0, 0, 100, 100));
+        final long version = index.getRegionVersion(0, 0, 50, 50);
+        assertFalse(index.put(1, 0, 0, 100, 100));
+        assertEquals(version, index.getRegionVersion(0, 0, 50, 50));
+    }
+
+    @Test
+    public void regionVersion() {
+        index.put(1, 0, 0, 100, 100);
+        index.put(2, 500, 500, 600, 600);
+        final long near = index.getRegionVersion(0, 0, 200, 200);
+        final long far = index.getRegionVersion(400, 400, 700, 700);
+        assertEquals(1, near >>> 32);
+
+        // moved elsewhere in its own area: only that area changes
+        index.put(2, 450, 450, 550, 550);
+        assertEquals(near, index.getRegionVersion(0, 0, 200, 200));
+        assertNotEquals(far, index.getRegionVersion(400, 400, 700, 700));
+
+        // entering an area changes it, and the key being placed is ignored
+        index.put(2, 50, 50, 150, 150);
+        assertNotEquals(near, index.getRegionVersion(0, 0, 200, 200));
+        assertEquals(near, index.getRegionVersion(2, 0, 0, 200, 200));
+
+        index.remove(2);
+        assertEquals(near, index.getRegionVersion(0, 0, 200, 200));
+    }
+}
@@ -0,0 +1,315 @@
+package it.sephiroth.android.library.tooltip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link TimerWheel} driven by hand through a fake clock and waker
+ */
+public class TimerWheelTest {
+
+    private static final class FakeClock implements TimerWheel.Clock {
+        long now = 1000;
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    }
+
+    private final class FakeWaker implements TimerWheel.Waker {
+        // uptime the wheel asked to be woken up at, -1 if not set
+        long wakeAt = -1;
+
+        @Override
+        public void wakeUp(final TimerWheel wheel, final long delayMs) {
+            wakeAt = clock.now + delayMs;
+        }
+
+        @Override
+        public void cancel(final TimerWheel wheel) {
+            wakeAt = -1;
+        }
+    }
+
+    private static final class CountingRunnable implements Runnable {
+        int count;
+        long lastRun = -1;
+        private final FakeClock clock;
+
+        CountingRunnable(FakeClock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public void run() {
+            count++;
+            lastRun = clock.now;
+        }
+    }
+
+    private FakeClock clock;
+    private FakeWaker waker;
+    private TimerWheel wheel;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        waker = new FakeWaker();
+        wheel = new TimerWheel(clock, waker);
+    }
+
+    private void advanceTo(long time) {
+        clock.now = time;
+        wheel.advance();
+    }
+
+    /**
+     * Advances the clock from wake up to wake up, as the main thread handler would
+     */
+    private int runUntilIdle() {
+        int wakeUps = 0;
+        while (waker.wakeAt >= 0) {
+            clock.now = Math.max(clock.now, waker.wakeAt);
+            waker.wakeAt = -1;
+            wheel.advance();
+            wakeUps++;
+        }
+        return wakeUps;
+    }
+
+    @Test
+    public void scheduleAndAdvance() {
+        CountingRunnable callback = new CountingRunnable(clock);
+        TimerWheel.Timer timer = new TimerWheel.Timer(callback);
+
+        wheel.schedule(timer, 100);
+        assertTrue(timer.isScheduled());
+        assertEquals(1, wheel.size());
+        assertEquals(1100, waker.wakeAt);
+
+        advanceTo(1050);
+        assertEquals(0, callback.count);
+        assertEquals(1, wheel.size());
+
+        advanceTo(1100);
+        assertEquals(1, callback.count);
+        assertFalse(timer.isScheduled());
+        assertEquals(0, wheel.size());
+        assertEquals(-1, waker.wakeAt);
+    }
+
+    @Test
+    public void neverFiresEarly() {
+        CountingRunnable callback = new CountingRunnable(clock);
+        TimerWheel.Timer timer = new TimerWheel.Timer(callback);
+
+        // not a multiple of the tick, rounded up
+        wheel.schedule(timer, 15);
+        advanceTo(1019);
+        assertEquals(0, callback.count);
+
+        runUntilIdle();
+        assertEquals(1, callback.count);
+        assertTrue(callback.lastRun >= 1015);
+        assertTrue(callback.lastRun < 1015 + TimerWheel.TICK_MS);
+    }
+
+    @Test
+    public void rescheduleReplacesDeadline() {
+        CountingRunnable callback = new CountingRunnable(clock);
+        TimerWheel.Timer timer = new TimerWheel.Timer(callback);
+
+        wheel.schedule(timer, 100);
+        wheel.schedule(timer, 300);
+        assertEquals(1, wheel.size());
+
+        advanceTo(1100);
+        assertEquals(0, callback.count);
+
+        runUntilIdle();
+        assertEquals(1, callback.count);
+        assertEquals(1300, callback.lastRun);
+    }
+
+    @Test
+    public void cancel() {
+        CountingRunnable callback = new CountingRunnable(clock);
+        TimerWheel.Timer timer = new TimerWheel.Timer(callback);
+        CountingRunnable other = new CountingRunnable(clock);
+        TimerWheel.Timer otherTimer = new TimerWheel.Timer(other);
+
+        wheel.schedule(timer, 100);
+        wheel.schedule(otherTimer, 100);
+        wheel.cancel(timer);
+        assertFalse(timer.isScheduled());
+        assertEquals(1, wheel.size());
+        assertEquals(1100, waker.wakeAt);
+
+        wheel.cancel(otherTimer);
+        assertEquals(0, wheel.size());
+        // nothing left, the waker is released
+        assertEquals(-1, waker.wakeAt);
+
+        advanceTo(2000);
+        assertEquals(0, callback.count);
+        assertEquals(0, other.count);
+    }
+
+    @Test
+    public void delayLongerThanTheWheel() {
+        CountingRunnable callback = new CountingRunnable(clock);
+        TimerWheel.Timer timer = new TimerWheel.Timer(callback);
+        // two revolutions and a half, shares its slot with the ticks of the previous rounds
+        final long delay = TimerWheel.TICK_MS * TimerWheel.SLOTS * 5 / 2;
+
+        wheel.schedule(timer, delay);
+
+        // every slot visited in between, the same slot included
+        for (long t = 1000 + TimerWheel.TICK_MS; t < 1000 + delay; t += TimerWheel.TICK_MS) {
+            advanceTo(t);
+        }
+        assertEquals(0, callback.count);
+        assertEquals(1, wheel.size());
+
+        advanceTo(1000 + delay);
+        assertEquals(1, callback.count);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void delayLongerThanTheWheelDrivenByTheWaker() {
+        CountingRunnable callback = new CountingRunnable(clock);
+        TimerWheel.Timer timer = new TimerWheel.Timer(callback);
+        CountingRunnable near = new CountingRunnable(clock);
+        TimerWheel.Timer nearTimer = new TimerWheel.Timer(near);
+        final long delay = TimerWheel.TICK_MS * TimerWheel.SLOTS * 3 + 70;
+
+        wheel.schedule(timer, delay);
+        // same slot, one round earlier
+        wheel.schedule(nearTimer, delay - TimerWheel.TICK_MS * TimerWheel.SLOTS);
+
+        runUntilIdle();
+        assertEquals(1, near.count);
+        assertEquals(1000 + delay - TimerWheel.TICK_MS * TimerWheel.SLOTS, near.lastRun);
+        assertEquals(1, callback.count);
+        assertEquals(1000 + delay, callback.lastRun);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void lateAdvanceFiresEverythingDue() {
+        CountingRunnable callback = new CountingRunnable(clock);
+        TimerWheel.Timer first = new TimerWheel.Timer(callback);
+        TimerWheel.Timer second = new TimerWheel.Timer(callback);
+        CountingRunnable later = new CountingRunnable(clock);
+        TimerWheel.Timer laterTimer = new TimerWheel.Timer(later);
+
+        wheel.schedule(first, 50);
+        wheel.schedule(second, TimerWheel.TICK_MS * TimerWheel.SLOTS * 2);
+        wheel.schedule(laterTimer, TimerWheel.TICK_MS * TimerWheel.SLOTS * 4);
+
+        // the main thread was stuck for more than a revolution
+        advanceTo(1000 + TimerWheel.TICK_MS * TimerWheel.SLOTS * 3);
+        assertEquals(2, callback.count);
+        assertEquals(0, later.count);
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void rescheduleFromItsOwnCallback() {
+        final int[] count = new int[1];
+        final TimerWheel.Timer[] timer = new TimerWheel.Timer[1];
+        timer[0] = new TimerWheel.Timer(new Runnable() {
+            @Override
+            public void run() {
+                if (++count[0] < 3) {
+                    wheel.schedule(timer[0], 50);
+                }
+            }
+        });
+
+        wheel.schedule(timer[0], 100);
+
+        advanceTo(1100);
+        // rescheduled, not fired again in the same pass
+        assertEquals(1, count[0]);
+        assertTrue(timer[0].isScheduled());
+        assertEquals(1, wheel.size());
+        assertEquals(1150, waker.wakeAt);
+
+        advanceTo(1150);
+        assertEquals(2, count[0]);
+
+        runUntilIdle();
+        assertEquals(3, count[0]);
+        assertEquals(1200, clock.now);
+        assertFalse(timer[0].isScheduled());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancelFromAnotherCallback() {
+        final CountingRunnable cancelled = new CountingRunnable(clock);
+        final TimerWheel.Timer cancelledTimer = new TimerWheel.Timer(cancelled);
+        TimerWheel.Timer timer = new TimerWheel.Timer(new Runnable() {
+            @Override
+            public void run() {
+                wheel.cancel(cancelledTimer);
+            }
+        });
+
+        // both due in the same advance, in either order
+        wheel.schedule(cancelledTimer, 100);
+        wheel.schedule(timer, 100);
+        advanceTo(1100);
+
+        assertTrue(cancelled.count <= 1);
+        assertFalse(cancelledTimer.isScheduled());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancelAfterFire() {
+        CountingRunnable callback = new CountingRunnable(clock);
+        TimerWheel.Timer timer = new TimerWheel.Timer(callback);
+
+        wheel.schedule(timer, 100);
+        advanceTo(1100);
+        assertEquals(1, callback.count);
+
+        wheel.cancel(timer);
+        wheel.cancel(timer);
+        assertEquals(0, wheel.size());
+
+        // still usable
+        wheel.schedule(timer, 100);
+        assertEquals(1, wheel.size());
+        runUntilIdle();
+        assertEquals(2, callback.count);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void clear() {
+        CountingRunnable callback = new CountingRunnable(clock);
+        TimerWheel.Timer first = new TimerWheel.Timer(callback);
+        TimerWheel.Timer second = new TimerWheel.Timer(callback);
+
+        wheel.schedule(first, 100);
+        wheel.schedule(second, 5000);
+        wheel.clear();
+
+        assertEquals(0, wheel.size());
+        assertFalse(first.isScheduled());
+        assertFalse(second.isScheduled());
+        assertEquals(-1, waker.wakeAt);
+
+        advanceTo(10000);
+        assertEquals(0, callback.count);
+    }
+}
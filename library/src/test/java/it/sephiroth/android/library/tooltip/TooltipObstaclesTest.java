@@ -0,0 +1,56 @@
+package it.sephiroth.android.library.tooltip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bubbles are owned by the tooltip views, not by their ids
+ */
+public class TooltipObstaclesTest {
+
+    private TooltipObstacles obstacles;
+
+    @Before
+    public void setUp() {
+        obstacles = new TooltipObstacles();
+    }
+
+    @Test
+    public void hideThenShowSameId() {
+        // the views of tooltip id 1: the hiding one, and the one shown again while it animates out
+        final Object hiding = new Object();
+        final Object shown = new Object();
+
+        obstacles.setBubble(hiding, 100, 100, 300, 200);
+        obstacles.setBubble(shown, 100, 100, 300, 200);
+
+        // the hiding view tracks its anchor until the end of the animation, then goes away
+        obstacles.setBubble(hiding, 120, 100, 320, 200);
+        obstacles.removeBubble(hiding);
+
+        assertTrue(obstacles.hitBubble(150, 150));
+        assertFalse(obstacles.hitBubble(310, 150));
+        assertTrue(obstacles.intersects(new Object(), 250, 150, 400, 250));
+        // its own bubble does not obstruct the new view
+        assertFalse(obstacles.intersects(shown, 250, 150, 400, 250));
+
+        obstacles.removeBubble(shown);
+        assertFalse(obstacles.hitBubble(150, 150));
+    }
+
+    @Test
+    public void keepClearRects() {
+        final Object owner = new Object();
+        obstacles.setKeepClear(1, 0, 0, 100, 100);
+
+        // keep-clear rects obstruct every tooltip
+        assertTrue(obstacles.intersects(owner, 50, 50, 150, 150));
+        assertFalse(obstacles.hitBubble(50, 50));
+
+        obstacles.removeKeepClear(1);
+        assertFalse(obstacles.intersects(owner, 50, 50, 150, 150));
+    }
+}
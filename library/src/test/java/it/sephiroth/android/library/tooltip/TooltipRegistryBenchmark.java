@@ -0,0 +1,152 @@
+package it.sephiroth.android.library.tooltip;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Show/hide/get churn of {@link TooltipRegistry} compared to the boxed map
+ * guarded by a monitor used by {@link TooltipManager} before it.<br />
+ * Run with <code>./gradlew :library:jmh -Pjmh.include=TooltipRegistryBenchmark</code>
+ */
+@State (Scope.Group)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.NANOSECONDS)
+@Warmup (iterations = 3, time = 1)
+@Measurement (iterations = 5, time = 1)
+@Fork (1)
+public class TooltipRegistryBenchmark {
+
+    /**
+     * The registry as it was in TooltipManager
+     */
+    static final class LockedMap {
+        final HashMap<Integer, TooltipView> map = new HashMap<Integer, TooltipView>();
+        final Object lock = new Object();
+
+        TooltipView get(int id) {
+            synchronized (lock) {
+                return map.get(id);
+            }
+        }
+
+        boolean contains(int id) {
+            synchronized (lock) {
+                return map.containsKey(id);
+            }
+        }
+
+        boolean put(int id, TooltipView view) {
+            synchronized (lock) {
+                if (map.containsKey(id)) {
+                    return false;
+                }
+                map.put(id, view);
+                return true;
+            }
+        }
+
+        TooltipView remove(int id) {
+            synchronized (lock) {
+                return map.remove(id);
+            }
+        }
+    }
+
+    // tooltips always registered, as on a typical onboarding screen
+    private static final int RESIDENT = 8;
+    // ids shown and hidden by the churn benchmarks, outside of the cached Integer range
+    private static final int CHURN_ID = 1000;
+
+    private TooltipRegistry registry;
+    private LockedMap lockedMap;
+    private int next;
+
+    @Setup
+    public void setup() {
+        registry = new TooltipRegistry();
+        lockedMap = new LockedMap();
+        for (int i = 0; i < RESIDENT; i++) {
+            registry.put(CHURN_ID * 2 + i, null);
+            lockedMap.put(CHURN_ID * 2 + i, null);
+        }
+    }
+
+    private int nextId() {
+        next = (next + 1) & (RESIDENT - 1);
+        return CHURN_ID * 2 + next;
+    }
+
+    @Benchmark
+    @Group ("registryGet")
+    public boolean registryGet() {
+        return registry.contains(nextId());
+    }
+
+    @Benchmark
+    @Group ("lockedMapGet")
+    public boolean lockedMapGet() {
+        return lockedMap.contains(nextId());
+    }
+
+    @Benchmark
+    @Group ("registryChurn")
+    public TooltipView registryChurn() {
+        registry.put(CHURN_ID, null);
+        registry.get(CHURN_ID);
+        return registry.remove(CHURN_ID);
+    }
+
+    @Benchmark
+    @Group ("lockedMapChurn")
+    public TooltipView lockedMapChurn() {
+        lockedMap.put(CHURN_ID, null);
+        lockedMap.get(CHURN_ID);
+        return lockedMap.remove(CHURN_ID);
+    }
+
+    /**
+     * Readers polling active(id) from frame callbacks while another thread shows and hides
+     */
+    @Benchmark
+    @Group ("registryContended")
+    @GroupThreads (3)
+    public boolean registryContendedGet() {
+        return registry.contains(CHURN_ID * 2);
+    }
+
+    @Benchmark
+    @Group ("registryContended")
+    @GroupThreads (1)
+    public TooltipView registryContendedChurn() {
+        registry.put(CHURN_ID, null);
+        return registry.remove(CHURN_ID);
+    }
+
+    @Benchmark
+    @Group ("lockedMapContended")
+    @GroupThreads (3)
+    public boolean lockedMapContendedGet() {
+        return lockedMap.contains(CHURN_ID * 2);
+    }
+
+    @Benchmark
+    @Group ("lockedMapContended")
+    @GroupThreads (1)
+    public TooltipView lockedMapContendedChurn() {
+        lockedMap.put(CHURN_ID, null);
+        return lockedMap.remove(CHURN_ID);
+    }
+}